@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Class running gitlet --batch, which reads commands from an input,
+ *  one per line, and runs them all in one JVM.  The stage, the remotes
+ *  and the caches of the object store stay in memory between
+ *  commands; the stage and the remotes are written back to .gitlet
+ *  every batch.flush commands (1 by default; 0 for only at the end),
+ *  at the end of the input, and on the command flush.  Decoded
+ *  commits and trees are dropped after each command unless
+ *  core.keepCacheWarm is set; see ObjectCache.
+ *
+ *  A line holds a command as it would be given to gitlet, its operands
+ *  separated by spaces; an operand containing spaces is written in
+ *  double quotes, in which \" and \\ stand for " and \.  For each
+ *  command, the output is a line "ok N" or, if the command failed,
+ *  "error N", followed by the N bytes of UTF-8 the command printed,
+ *  including its error message.
+ *  @author Chris Sreesangkom
+ */
+class Batch {
+
+    /** Option of gitlet selecting batch mode. */
+    static final String OPTION = "--batch";
+    /** Command writing the state held in memory back to .gitlet. */
+    static final String FLUSH = "flush";
+
+    /** Runs the commands read from IN, writing their results to OUT. */
+    static void run(BufferedReader in, PrintStream out) {
+        PrintStream stdout = System.out;
+        int unsaved = 0;
+        try {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                boolean ok;
+                System.setOut(new PrintStream(output, true,
+                        StandardCharsets.UTF_8));
+                try {
+                    ok = runLine(line);
+                } finally {
+                    System.setOut(stdout);
+                    Main.endCommand();
+                    ObjectCache.release(".gitlet");
+                }
+                unsaved += 1;
+                int interval = Config.getInt(".gitlet", "batch.flush", 1);
+                if (line.trim().equals(FLUSH) || unsaved == interval) {
+                    Main.save();
+                    unsaved = 0;
+                }
+                out.printf("%s %d%n", ok ? "ok" : "error", output.size());
+                output.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            stdout.println("Batch input unreadable.");
+        } finally {
+            Main.save();
+        }
+    }
+
+    /** Runs the command on LINE.  Returns true if it succeeded. */
+    private static boolean runLine(String line) {
+        List<String> args;
+        try {
+            args = split(line);
+        } catch (GitletException e) {
+            Utils.message(e.getMessage());
+            return false;
+        }
+        if (args.equals(List.of(FLUSH))) {
+            return true;
+        } else if (args.get(0).equals(OPTION)
+                   || args.get(0).equals("serve")) {
+            Utils.message("Not available in batch mode.");
+            return false;
+        }
+        return Main.run(args.toArray(new String[0]));
+    }
+
+    /** Returns the operands on LINE, which are separated by spaces
+     *  unless in double quotes. */
+    static List<String> split(String line) {
+        ArrayList<String> result = new ArrayList<>();
+        StringBuilder arg = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    arg.append(line.charAt(i));
+                } else {
+                    arg.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (arg != null) {
+                    result.add(arg.toString());
+                    arg = null;
+                }
+            } else {
+                if (arg == null) {
+                    arg = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    arg.append(c);
+                }
+            }
+        }
+        if (quoted) {
+            throw Utils.error("Unterminated quote.");
+        }
+        if (arg != null) {
+            result.add(arg.toString());
+        }
+        return result;
+    }
+}
@@ -2,7 +2,10 @@ package gitlet;
 
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
 
 /** Class representing Blob storing
  *  file contents.
@@ -10,28 +13,66 @@ import java.io.IOException;
  */
 class Blob {
 
-    /** Returns the Sha-1 encoding of FILE. */
+    /** Size of the buffer through which files are hashed. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the Sha-1 encoding of FILE. The ID depends only on
+     *  the contents of FILE, so identical files share one blob. */
     static String getSha1(File file) {
-        String fileContent = Utils.readContentsAsString(file);
-        return Utils.sha1("blob", file.toPath().toString(), fileContent);
+        MessageDigest digest = Utils.sha1Digest("blob");
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return Utils.toHex(digest.digest());
     }
 
-    /** Creates the blob for FILE. */
-    static void createBlobObj(File file) {
-        String sha1 = getSha1(file);
-        String fileName = ".gitlet//objects" + "//"
-                + sha1.substring(0, 2) + "//" + sha1.substring(2);
-        String dirName = ".gitlet//objects" + "//" + sha1.substring(0, 2);
+    /** Returns the Sha-1 encoding of the blob holding CONTENTS. */
+    static String getSha1(byte[] contents) {
+        return Utils.sha1("blob", contents);
+    }
+
+    /** Creates the blob for FILE in the repository with .gitlet
+     *  directory REPODIR, hashing and storing its contents in a single
+     *  pass, and returns its ID.  Large files are stored in chunks if
+     *  core.chunking is set. */
+    static String createBlobObj(String repoDir, File file) {
         try {
-            new File(dirName).mkdir();
-            File blobFile = new File(fileName);
-            if (!blobFile.createNewFile()) {
-                return;
+            if (Chunker.shouldChunk(repoDir, file)) {
+                return Chunker.write(repoDir, file);
             }
-            Utils.writeContents(blobFile, Utils.readContentsAsString(file));
-        } catch (IOException e) {
+            return ObjectStore.writeFile(repoDir, ObjectStore.BLOB,
+                    Utils.sha1Digest("blob"), file);
+        } catch (IllegalArgumentException e) {
             throw Utils.error("Blob creation unsuccessful.");
         }
     }
 
+    /** Writes CONTENTS as the blob with ID SHA1 of REPODIR, unless it
+     *  already exists. */
+    private static void writeBlob(String repoDir, String sha1,
+                                  byte[] contents) {
+        try {
+            ObjectStore.write(repoDir, sha1, ObjectStore.BLOB, contents);
+        } catch (IllegalArgumentException e) {
+            throw Utils.error("Blob creation unsuccessful.");
+        }
+    }
+
+    /** Rewrites the blob of REPODIR stored under the path-dependent
+     *  OLDID as a content-addressed blob. Returns the new ID, which is
+     *  OLDID itself if the blob is already content-addressed. */
+    static String migrate(String repoDir, String oldID) {
+        byte[] contents = ObjectStore.read(repoDir, oldID);
+        String newID = getSha1(contents);
+        if (!newID.equals(oldID)) {
+            writeBlob(repoDir, newID, contents);
+        }
+        return newID;
+    }
+
 }
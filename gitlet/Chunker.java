@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Class storing large files as chunked blobs.  A file is cut into
+ *  chunks at content-defined boundaries, found with a gear rolling
+ *  hash over the last 64 bytes, so that an edit only moves the
+ *  boundaries next to it and the other chunks keep their IDs.  Each
+ *  chunk is stored as a CHUNK object, and the blob itself as a
+ *  CHUNKED object listing its chunks.  The blob ID is still the
+ *  hash of the whole contents, so a file has the same ID whether it
+ *  is chunked or not.
+ *
+ *  A chunk list is a sequence of entries, each the raw 20-byte ID
+ *  of a chunk followed by its length as an int.
+ *  @author Chris Sreesangkom
+ */
+class Chunker {
+
+    /** Files at least this many bytes long are chunked, by
+     *  default, when core.chunking is set. */
+    private static final int DEFAULT_THRESHOLD = 1 << 20;
+    /** Chunks are at least this many bytes long, except the last. */
+    private static final int MIN_SIZE = 1 << 14;
+    /** Chunks are at most this many bytes long. */
+    private static final int MAX_SIZE = 1 << 18;
+    /** A boundary follows a byte after which these bits of the
+     *  rolling hash are zero, giving chunks of 64 KiB on average. */
+    private static final long MASK = 0xffffL << 48;
+    /** Size of a chunk list entry. */
+    private static final int ENTRY_SIZE = 24;
+    /** Size of a raw object ID. */
+    private static final int ID_SIZE = 20;
+    /** Size of the buffer through which files are read. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns true if FILE should be stored as a chunked blob in the
+     *  repository with .gitlet directory REPODIR. */
+    static boolean shouldChunk(String repoDir, File file) {
+        return Config.getBoolean(repoDir, "core.chunking", false)
+                && file.length() >= Config.getInt(repoDir,
+                        "core.chunkThreshold", DEFAULT_THRESHOLD);
+    }
+
+    /** Stores the contents of FILE in the repository with .gitlet
+     *  directory REPODIR as a chunked blob, reading it once, and
+     *  returns the blob ID. */
+    static String write(String repoDir, File file) {
+        MessageDigest digest = Utils.sha1Digest("blob");
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        byte[] chunk = new byte[MAX_SIZE];
+        int size = 0;
+        long hash = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+                for (int i = 0; i < n; i += 1) {
+                    chunk[size] = buffer[i];
+                    size += 1;
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+                    if (size == MAX_SIZE
+                            || (size >= MIN_SIZE && (hash & MASK) == 0)) {
+                        writeChunk(repoDir, chunk, size, list);
+                        size = 0;
+                        hash = 0;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (size > 0) {
+            writeChunk(repoDir, chunk, size, list);
+        }
+        String id = Utils.toHex(digest.digest());
+        ObjectStore.write(repoDir, id, ObjectStore.CHUNKED,
+                list.toByteArray());
+        return id;
+    }
+
+    /** Stores the first SIZE bytes of CHUNK in REPODIR, unless it is
+     *  already there, and adds its entry to LIST. */
+    private static void writeChunk(String repoDir, byte[] chunk, int size,
+                                   ByteArrayOutputStream list) {
+        byte[] contents = Arrays.copyOf(chunk, size);
+        String id = Utils.sha1("chunk", contents);
+        ObjectStore.write(repoDir, id, ObjectStore.CHUNK, contents);
+        list.write(Utils.fromHex(id), 0, ID_SIZE);
+        list.write(ByteBuffer.allocate(4).putInt(size).array(), 0, 4);
+    }
+
+    /** Returns the IDs of the chunks in the chunk list LIST. */
+    static List<String> chunkIDs(byte[] list) {
+        ArrayList<String> result = new ArrayList<>();
+        byte[] raw = new byte[ID_SIZE];
+        for (int i = 0; i + ENTRY_SIZE <= list.length; i += ENTRY_SIZE) {
+            System.arraycopy(list, i, raw, 0, ID_SIZE);
+            result.add(Utils.toHex(raw));
+        }
+        return result;
+    }
+
+    /** Gear table: a fixed pseudo-random 64-bit value per byte,
+     *  generated with SplitMix64 so that every version of gitlet
+     *  finds the same boundaries. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+}
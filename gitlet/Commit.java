@@ -1,115 +1,230 @@
 package gitlet;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 
 /** Class representing a Commit.
+ *
+ *  A commit object holds a header of a magic number and a format
+ *  version, the raw commit ID, a byte of flags telling which parents
+ *  the commit has, the raw IDs of those parents and of the tree, the
+ *  timestamp and the length-prefixed UTF-8 message.  Commit objects
+ *  written by earlier versions of gitlet are Java-serialized; they
+ *  are still read, and migrate rewrites them in the current format.
  *  @author Chris Sreesangkom
  */
 class Commit implements Serializable {
 
-    /** Contstructor for a normal commit with
+    /** Magic number starting an encoded commit. */
+    private static final int MAGIC = 0x47434d54;
+    /** Version of the commit format. */
+    private static final int VERSION = 1;
+    /** Flag of commits with a parent. */
+    private static final int HAS_PARENT = 1;
+    /** Flag of commits with a second parent. */
+    private static final int HAS_SECOND_PARENT = 2;
+    /** Commits decoded by getRemCommit. */
+    private static final ObjectCache<Commit> CACHE = new ObjectCache<>();
+
+    /** An empty commit, to be filled in by decode. */
+    private Commit() {
+    }
+
+    /** Contstructor for a normal commit in the repository with
+     *  .gitlet directory REPODIR with
      *  staging area STAGED,
      *  parent ID PARID,
      *  timestampe TIME,
      *  commit message MESS. */
-    private Commit(HashMap<String, String> staged,
+    private Commit(String repoDir, HashMap<String, String> staged,
                    String parID, long time, String mess) {
         blobs = staged;
+        directory = repoDir;
         parentID = parID;
         secondParentID = null;
         timestamp = time;
         message = mess;
         sha1 = Utils.sha1(staged.toString(),
                 parID, Long.toString(time), mess);
-        String dirName = ".gitlet//objects//" + sha1.substring(0, 2);
-        String fileName = ".gitlet//objects//"
-                + sha1.substring(0, 2) + "//" + sha1.substring(2);
-        try {
-            new File(dirName).mkdir();
-            Utils.writeObject(new File(fileName), this);
-        } catch (IllegalArgumentException e) {
-            throw Utils.error("Commit creation unsuccessful");
-        }
+        save();
     }
 
-    /** Contstructor for a merged commit with
+    /** Contstructor for a merged commit in the repository with
+     *  .gitlet directory REPODIR with
      *  staging area STAGED,
      *  parent ID PARID,
      *  timestampe TIME,
      *  commit message MESS
      *  second parent DI SECPARID. */
-    private Commit(HashMap<String, String> staged,
+    private Commit(String repoDir, HashMap<String, String> staged,
                    String parID, long time, String mess,
                    String secParID) {
         blobs = staged;
+        directory = repoDir;
         parentID = parID;
         secondParentID = secParID;
         timestamp = time;
         message = mess;
         sha1 = Utils.sha1(staged.toString(),
                 parID, secParID, Long.toString(time), mess);
-        String dirName = ".gitlet//objects//" + sha1.substring(0, 2);
-        String fileName = ".gitlet//objects//"
-                + sha1.substring(0, 2) + "//" + sha1.substring(2);
+        save();
+    }
+
+    /** Writes this commit to its object file.  The blob mapping is
+     *  stored as a tree, and only the tree ID is kept in the commit
+     *  object. */
+    private void save() {
+        HashMap<String, String> kept = blobs;
         try {
-            new File(dirName).mkdir();
-            Utils.writeObject(new File(fileName), this);
+            treeID = Tree.write(directory, blobs);
+            blobs = null;
+            ObjectStore.replace(directory, sha1, ObjectStore.COMMIT,
+                    encode());
+            CACHE.remove(directory, sha1);
         } catch (IllegalArgumentException e) {
             throw Utils.error("Commit creation unsuccessful");
+        } finally {
+            blobs = kept;
         }
     }
 
-    /** Returns a commit with the SHA1 as ID. */
-    static Commit getCommit(String sha1) {
-        String file = ".gitlet//objects//" + sha1.substring(0, 2)
-                + "//" + sha1.substring(2);
-        try {
-            return Utils.readObject(new File(file), Commit.class);
-        } catch (IllegalArgumentException e) {
-            throw Utils.error("No commit with that id exists.");
+    /** Returns a commit with the SHA1 as REMOTEDIR.  Commits are
+     *  decoded once and kept in CACHE; each call returns a copy. */
+    static Commit getRemCommit(String sha1, String remoteDir) {
+        Commit commit = CACHE.get(remoteDir, sha1);
+        if (commit == null) {
+            try {
+                byte[] bytes = ObjectStore.read(remoteDir, sha1);
+                commit = decode(remoteDir, bytes);
+                CACHE.put(remoteDir, sha1, commit, bytes.length);
+            } catch (IllegalArgumentException e) {
+                throw new GitletException.NotFound(
+                        "No commit with that id exists.");
+            }
         }
+        return commit.copy();
     }
 
-    /** Returns a commit with the SHA1 as REMOTEDIR. */
-    static Commit getRemCommit(String sha1, String remoteDir) {
-        String file = remoteDir + "//objects//"
-                + sha1.substring(0, 2)  + "//" + sha1.substring(2);
-        try {
-            return Utils.readObject(new File(file), Commit.class);
-        } catch (IllegalArgumentException e) {
-            throw Utils.error("No commit with that id exists.");
+    /** Returns the cache of decoded commits. */
+    static ObjectCache<?> cache() {
+        return CACHE;
+    }
+
+    /** Returns a copy of this commit, which may be changed without
+     *  changing this one. */
+    private Commit copy() {
+        Commit result = new Commit();
+        result.blobs = blobs == null ? null : new HashMap<>(blobs);
+        result.treeID = treeID;
+        result.directory = directory;
+        result.legacy = legacy;
+        result.parentID = parentID;
+        result.secondParentID = secondParentID;
+        result.timestamp = timestamp;
+        result.message = message;
+        result.sha1 = sha1;
+        return result;
+    }
+
+    /** Returns the encoding of this commit, writing its tree if it
+     *  has none yet. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            boolean hasParent = parentID != null
+                && !parentID.equals("None");
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Utils.writeID(out, sha1);
+            out.writeByte((hasParent ? HAS_PARENT : 0)
+                    | (isMergeCommit() ? HAS_SECOND_PARENT : 0));
+            if (hasParent) {
+                Utils.writeID(out, parentID);
+            }
+            if (isMergeCommit()) {
+                Utils.writeID(out, secondParentID);
+            }
+            Utils.writeID(out, getTreeID());
+            out.writeLong(timestamp);
+            Utils.writeString(out, message);
+        } catch (IOException e) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the commit of the repository with .gitlet directory
+     *  REPODIR encoded as BYTES, in the current format or Java
+     *  serialization.  Throws IllegalArgumentException if BYTES are
+     *  not a commit. */
+    static Commit decode(String repoDir, byte[] bytes) {
+        Commit commit;
+        if (Utils.isSerialized(bytes)) {
+            commit = Utils.deserialize(bytes, Commit.class);
+            commit.legacy = true;
+        } else {
+            commit = new Commit();
+            try {
+                ByteBuffer in = ByteBuffer.wrap(bytes);
+                if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                    throw new IllegalArgumentException("not a commit");
+                }
+                commit.sha1 = Utils.readID(in);
+                int flags = in.get();
+                commit.parentID = (flags & HAS_PARENT) != 0
+                    ? Utils.readID(in) : "None";
+                commit.secondParentID = (flags & HAS_SECOND_PARENT) != 0
+                    ? Utils.readID(in) : null;
+                commit.treeID = Utils.readID(in);
+                commit.timestamp = in.getLong();
+                commit.message = Utils.readString(in);
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("truncated commit");
+            }
         }
+        commit.directory = repoDir;
+        return commit;
     }
 
 
-    /** Creates the commit with
+    /** Creates the commit in REPODIR with
      *  staging area STAGED,
      *  parent ID PARENTID,
      *  timestampe TIME,
      *  commit message MESSAGE.
      *  Returns the ID of the commit created. */
-    static String createCommit(HashMap<String, String> staged,
+    static String createCommit(String repoDir,
+                               HashMap<String, String> staged,
                                String parentID, long time,
                                String message) {
-        return new Commit(staged, parentID, time, message).getID();
+        Commit commit = new Commit(repoDir, staged, parentID, time,
+                message);
+        CommitGraph.get(repoDir).record(commit);
+        return commit.getID();
     }
 
-    /** Creates the merged commit with
+    /** Creates the merged commit in REPODIR with
      *  staging area STAGED,
      *  parent ID PARENTID,
      *  timestampe TIME,
      *  commit message MESSAGE
      *  second parent DI SECONDPARENTID.
      *  Returns the ID of the commit created. */
-    static String createCommit(HashMap<String, String> staged,
+    static String createCommit(String repoDir,
+                               HashMap<String, String> staged,
                                String parentID, long time,
                                String message, String secondParentID) {
-        return new Commit(staged, parentID, time, message,
-                secondParentID).getID();
+        Commit commit = new Commit(repoDir, staged, parentID, time,
+                message, secondParentID);
+        CommitGraph.get(repoDir).record(commit);
+        return commit.getID();
     }
 
     /** Returns the commit message. */
@@ -124,6 +239,11 @@ class Commit implements Serializable {
         return timeFormat.format(new Date(timestamp));
     }
 
+    /** Returns the commit time in milliseconds since the epoch. */
+    long getTimestamp() {
+        return timestamp;
+    }
+
     /** Returns the ID of the parent commit. */
     String getParentID() {
         return parentID;
@@ -140,23 +260,59 @@ class Commit implements Serializable {
         return secondParentID != null;
     }
 
-    /** Returns the mapping of file names at blob ID. */
+    /** Returns the mapping of file names at blob ID, reading it
+     *  from the tree of the commit on first use. */
     HashMap<String, String> getBlobs() {
+        if (blobs == null) {
+            blobs = Tree.read(directory, treeID);
+        }
         return blobs;
     }
 
+    /** Returns the ID of the tree of the commit.  Commits written
+     *  by earlier versions of gitlet have their tree written on
+     *  first use. */
+    String getTreeID() {
+        if (treeID == null) {
+            treeID = Tree.write(directory, blobs);
+        }
+        return treeID;
+    }
+
+    /** Returns true if the commit was read from an object written by
+     *  an earlier version of gitlet. */
+    boolean isLegacy() {
+        return legacy;
+    }
+
     /** Returns the commit ID. */
     String getID() {
         return sha1;
     }
 
+    /** Overwrites the blob mapping with BLOBMAP and rewrites the
+     *  commit object in place, keeping its ID. Used when migrating
+     *  blob IDs. */
+    void replaceBlobs(HashMap<String, String> blobMap) {
+        blobs = blobMap;
+        save();
+    }
+
     /** Overwrites parentID with ID. */
     void setParent(String id) {
         parentID = id;
     }
 
-    /** Mapping of file name and blob ID. */
+    /** Mapping of file name and blob ID.  Not stored in commits
+     *  written by this version, which use treeID instead. */
     private HashMap<String, String> blobs;
+    /** ID of the tree holding the mapping of file name and blob ID.
+     *  Null in commits written by earlier versions of gitlet. */
+    private String treeID;
+    /** The .gitlet directory the commit was read from. */
+    private transient String directory;
+    /** True if the commit was read from a Java-serialized object. */
+    private transient boolean legacy;
     /** The ID of the parent commit. */
     private String parentID;
     /** The ID ofthe second parent commit.
@@ -168,4 +324,8 @@ class Commit implements Serializable {
     private String message;
     /** Commit ID. */
     private String sha1;
+
+    /** Serialization version, fixed so that objects written by
+     *  earlier versions of gitlet can still be read. */
+    private static final long serialVersionUID = 482341200970379101L;
 }
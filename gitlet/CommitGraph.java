@@ -0,0 +1,380 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** Class representing the commit graph of a repository,
+ *  objects/info/commit-graph.  Each commit is given an index, and
+ *  the graph records the indices of its parents, its generation
+ *  number (one more than the largest generation of its parents) and
+ *  its timestamp, so that ancestry queries run over int arrays
+ *  without reading commit objects.
+ *
+ *  The file is an eight-byte header followed by one 40-byte record
+ *  per commit: the raw ID, the two parent indices (-1 if absent),
+ *  the generation and the timestamp.  Records are appended as
+ *  commits are made or fetched; a commit missing from the graph is
+ *  added, with its ancestors, the first time it is looked up.
+ *
+ *  Other processes, such as the command line beside a long-lived
+ *  serve or --batch process, append to the same file, so parent
+ *  indices are only meaningful in file order.  Records are appended
+ *  under a lock on the file, after reading whatever was appended
+ *  since it was last read, so the graph in memory is always a prefix
+ *  of the file.
+ *  @author Chris Sreesangkom
+ */
+class CommitGraph {
+
+    /** Magic number starting the graph file. */
+    private static final int MAGIC = 0x47475246;
+    /** Version of the graph format. */
+    private static final int VERSION = 1;
+    /** Size of the header. */
+    private static final int HEADER_SIZE = 8;
+    /** Size of one record. */
+    private static final int RECORD_SIZE = 40;
+    /** Size of a raw object ID. */
+    private static final int ID_SIZE = 20;
+    /** Index standing for a missing parent. */
+    static final int NONE = -1;
+    /** Mark of commits reachable from the first side of a merge. */
+    private static final byte FIRST_SIDE = 1;
+    /** Mark of commits reachable from the second side of a merge. */
+    private static final byte SECOND_SIDE = 2;
+    /** Mark of commits reachable from both sides of a merge. */
+    private static final byte BOTH_SIDES = FIRST_SIDE | SECOND_SIDE;
+
+    /** Loads the graph of the repository with .gitlet directory
+     *  REPODIR. */
+    private CommitGraph(String repoDir) {
+        dir = repoDir;
+        file = new File(repoDir + "//objects//info//commit-graph");
+        lookup = new HashMap<>();
+        ids = new String[16];
+        parents = new int[16];
+        secondParents = new int[16];
+        generations = new int[16];
+        timestamps = new long[16];
+        refresh();
+    }
+
+    /** Reads the records appended to the file since it was last
+     *  read, if any. */
+    private void refresh() {
+        if (file.length() == loaded) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            refresh(in);
+        } catch (IOException e) {
+            throw Utils.error("Commit graph read unsuccessful.");
+        }
+    }
+
+    /** Reads the records appended to the graph file, open as IN,
+     *  since it was last read.  If the file is shorter than what was
+     *  read, it was replaced, and is read again from the start.  A
+     *  file with a bad header is ignored, leaving LOADED zero. */
+    private void refresh(RandomAccessFile in) throws IOException {
+        long length = in.length();
+        if (length == loaded) {
+            return;
+        } else if (length < loaded) {
+            lookup.clear();
+            size = 0;
+            loaded = 0;
+        }
+        if (loaded == 0) {
+            if (length < HEADER_SIZE) {
+                return;
+            }
+            in.seek(0);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            loaded = HEADER_SIZE;
+        }
+        int count = (int) ((length - loaded) / RECORD_SIZE);
+        byte[] records = new byte[count * RECORD_SIZE];
+        in.seek(loaded);
+        in.readFully(records);
+        ByteBuffer bytes = ByteBuffer.wrap(records);
+        byte[] raw = new byte[ID_SIZE];
+        while (bytes.hasRemaining()) {
+            bytes.get(raw);
+            put(Utils.toHex(raw), bytes.getInt(), bytes.getInt(),
+                    bytes.getInt(), bytes.getLong());
+        }
+        loaded += records.length;
+    }
+
+    /** Returns the graph of REPODIR, loading it on first use. */
+    static synchronized CommitGraph get(String repoDir) {
+        CommitGraph graph = GRAPHS.get(repoDir);
+        if (graph == null) {
+            graph = new CommitGraph(repoDir);
+            GRAPHS.put(repoDir, graph);
+        }
+        return graph;
+    }
+
+    /** Returns the index of commit ID, adding it and any of its
+     *  ancestors missing from the graph.  Returns NONE if ID is
+     *  "None". */
+    synchronized int indexOf(String id) {
+        if (id == null || id.equals("None")) {
+            return NONE;
+        }
+        Integer index = lookup.get(id);
+        if (index == null) {
+            refresh();
+            index = lookup.get(id);
+        }
+        if (index != null) {
+            return index;
+        }
+        ArrayDeque<Commit> pending = new ArrayDeque<>();
+        pending.push(Commit.getRemCommit(id, dir));
+        while (!pending.isEmpty()) {
+            Commit commit = pending.peek();
+            boolean ready = true;
+            for (String parent : new String[] {
+                    commit.getParentID(), commit.getSecondParentID()}) {
+                if (parent != null && !parent.equals("None")
+                        && !lookup.containsKey(parent)) {
+                    if (ObjectStore.contains(dir, parent)) {
+                        pending.push(Commit.getRemCommit(parent, dir));
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                add(pending.pop());
+            }
+        }
+        return lookup.get(id);
+    }
+
+    /** Adds the newly made or fetched COMMIT to the graph, along
+     *  with any of its ancestors missing from it. */
+    synchronized void record(Commit commit) {
+        indexOf(commit.getParentID());
+        if (commit.isMergeCommit()) {
+            indexOf(commit.getSecondParentID());
+        }
+        add(commit);
+    }
+
+    /** Adds COMMIT, whose parents must already be in the graph or
+     *  missing from the repository, and appends it to the file. */
+    private void add(Commit commit) {
+        if (lookup.containsKey(commit.getID())) {
+            return;
+        }
+        file.getParentFile().mkdir();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel();
+             FileLock lock = channel.lock()) {
+            refresh(out);
+            if (!lookup.containsKey(commit.getID())) {
+                append(commit, out);
+            }
+        } catch (IOException e) {
+            throw Utils.error("Commit graph update unsuccessful.");
+        }
+    }
+
+    /** Adds COMMIT to the graph and appends its record to the graph
+     *  file, open and locked as OUT, which has been read to its end
+     *  or has a bad header. */
+    private void append(Commit commit, RandomAccessFile out)
+        throws IOException {
+        int parent = parentIndex(commit.getParentID());
+        int second = parentIndex(commit.getSecondParentID());
+        int generation = 1;
+        if (parent != NONE) {
+            generation = Math.max(generation, generations[parent] + 1);
+        }
+        if (second != NONE) {
+            generation = Math.max(generation, generations[second] + 1);
+        }
+        put(commit.getID(), parent, second, generation,
+                commit.getTimestamp());
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE);
+        if (loaded == 0) {
+            out.setLength(0);
+            record.putInt(MAGIC).putInt(VERSION);
+        }
+        record.put(Utils.fromHex(commit.getID())).putInt(parent)
+            .putInt(second).putInt(generation)
+            .putLong(commit.getTimestamp());
+        out.seek(loaded);
+        out.write(record.array(), 0, record.position());
+        loaded += record.position();
+    }
+
+    /** Returns the index of the parent with ID, or NONE if it is
+     *  absent or missing from the graph. */
+    private int parentIndex(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer index = lookup.get(id);
+        return index == null ? NONE : index;
+    }
+
+    /** Returns true if the commit ANCESTOR is DESCENDANT or one of
+     *  its ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = indexOf(ancestor);
+        int start = indexOf(descendant);
+        boolean[] seen = new boolean[size];
+        int[] stack = new int[size];
+        int top = 0;
+        stack[top++] = start;
+        seen[start] = true;
+        while (top > 0) {
+            int index = stack[--top];
+            if (index == target) {
+                return true;
+            }
+            for (int parent : new int[] {parents[index],
+                                         secondParents[index]}) {
+                if (parent != NONE && !seen[parent]
+                        && generations[parent] >= generations[target]) {
+                    seen[parent] = true;
+                    stack[top++] = parent;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the index of a best common ancestor of the commits
+     *  FIRST and SECOND: one that is not an ancestor of any other
+     *  common ancestor.  Returns NONE if they have none.
+     *
+     *  Both sides are walked together, newest generation first,
+     *  marking each commit with the sides it is reachable from.  The
+     *  first commit reached from both sides has the largest
+     *  generation of all common ancestors, so it cannot be an
+     *  ancestor of another one, and the walk stops there. */
+    int mergeBase(String first, String second) {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        if (a == b) {
+            return a;
+        }
+        byte[] flags = new byte[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            if (generations[x] != generations[y]) {
+                return Integer.compare(generations[y], generations[x]);
+            }
+            return Long.compare(timestamps[y], timestamps[x]);
+        });
+        flags[a] = FIRST_SIDE;
+        flags[b] = SECOND_SIDE;
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            byte sides = flags[index];
+            if (sides == BOTH_SIDES) {
+                return index;
+            }
+            for (int parent : new int[] {parents[index],
+                                         secondParents[index]}) {
+                if (parent != NONE && (flags[parent] & sides) != sides) {
+                    flags[parent] |= sides;
+                    queue.add(parent);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the ID of the commit with INDEX. */
+    String getID(int index) {
+        return ids[index];
+    }
+
+    /** Returns the index of the first parent of INDEX, or NONE. */
+    int getParent(int index) {
+        return parents[index];
+    }
+
+    /** Returns the index of the second parent of INDEX, or NONE. */
+    int getSecondParent(int index) {
+        return secondParents[index];
+    }
+
+    /** Returns the generation number of INDEX. */
+    int getGeneration(int index) {
+        return generations[index];
+    }
+
+    /** Returns the timestamp of INDEX. */
+    long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return size;
+    }
+
+    /** Records commit ID with parents PARENT and SECOND, generation
+     *  GENERATION and timestamp TIME in memory. */
+    private void put(String id, int parent, int second, int generation,
+                     long time) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, 2 * size);
+            parents = Arrays.copyOf(parents, 2 * size);
+            secondParents = Arrays.copyOf(secondParents, 2 * size);
+            generations = Arrays.copyOf(generations, 2 * size);
+            timestamps = Arrays.copyOf(timestamps, 2 * size);
+        }
+        ids[size] = id;
+        parents[size] = parent;
+        secondParents[size] = second;
+        generations[size] = generation;
+        timestamps[size] = time;
+        lookup.put(id, size);
+        size += 1;
+    }
+
+    /** Map pairing repository directories with their loaded graph. */
+    private static final HashMap<String, CommitGraph> GRAPHS =
+        new HashMap<>();
+
+    /** The .gitlet directory of the repository. */
+    private String dir;
+    /** The graph file. */
+    private File file;
+    /** Length of the graph file read into memory, or zero if none of
+     *  it has been. */
+    private long loaded;
+    /** Map pairing commit IDs with their index. */
+    private HashMap<String, Integer> lookup;
+    /** Number of commits in the graph. */
+    private int size;
+    /** Commit IDs, by index. */
+    private String[] ids;
+    /** First parent indices, by index. */
+    private int[] parents;
+    /** Second parent indices, by index. */
+    private int[] secondParents;
+    /** Generation numbers, by index. */
+    private int[] generations;
+    /** Timestamps, by index. */
+    private long[] timestamps;
+}
@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Class representing the log of all commits ever made in a
+ *  repository, logs/commits.  The file is an eight-byte header
+ *  followed by one fixed-size record, the raw 20-byte ID, per
+ *  commit, so that committing appends a single record and readers
+ *  can memory-map it.
+ *  @author Chris Sreesangkom
+ */
+class CommitLogFile {
+
+    /** Magic number starting the log file. */
+    private static final int MAGIC = 0x474c4f47;
+    /** Version of the log format. */
+    private static final int VERSION = 1;
+    /** Size of the header. */
+    private static final int HEADER_SIZE = 8;
+    /** Size of one record. */
+    private static final int RECORD_SIZE = 20;
+
+    /** Appends COMMITID to the commit log of the repository with
+     *  .gitlet directory REPODIR. */
+    static void append(String repoDir, String commitID) {
+        File file = logFile(repoDir);
+        upgrade(repoDir);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE);
+        if (file.length() == 0) {
+            record.putInt(MAGIC).putInt(VERSION);
+        }
+        record.put(Utils.fromHex(commitID));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(record.array(), 0, record.position());
+        } catch (IOException e) {
+            throw Utils.error("Commit log update unsuccessful.");
+        }
+    }
+
+    /** Returns the IDs in the commit log of REPODIR, in the order
+     *  they were committed, read lazily from a mapping of the
+     *  file. */
+    static Iterable<String> ids(String repoDir) {
+        return ids(repoDir, 0);
+    }
+
+    /** Returns the number of IDs in the commit log of REPODIR. */
+    static int size(String repoDir) {
+        upgrade(repoDir);
+        long length = logFile(repoDir).length();
+        return length <= HEADER_SIZE ? 0
+            : (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    /** Returns the IDs in the commit log of REPODIR from the FROMth
+     *  on, in the order they were committed. */
+    static Iterable<String> ids(String repoDir, int from) {
+        upgrade(repoDir);
+        File file = logFile(repoDir);
+        ByteBuffer mapped;
+        if (file.length() <= HEADER_SIZE) {
+            mapped = ByteBuffer.allocate(0);
+        } else {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                MappedByteBuffer map = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                long start = HEADER_SIZE + (long) from * RECORD_SIZE;
+                mapped = map.position((int) Math.min(start, map.limit()))
+                    .slice();
+            } catch (IOException e) {
+                throw Utils.error("Commit log unreadable.");
+            }
+        }
+        final ByteBuffer all = mapped;
+        return () -> new Iterator<String>() {
+            /** The records not yet returned. */
+            private ByteBuffer records = all.duplicate();
+
+            @Override
+            public boolean hasNext() {
+                return records.remaining() >= RECORD_SIZE;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] raw = new byte[RECORD_SIZE];
+                records.get(raw);
+                return Utils.toHex(raw);
+            }
+        };
+    }
+
+    /** Rewrites the commit log of REPODIR in the current format if
+     *  it is a serialized set written by an earlier version. */
+    private static void upgrade(String repoDir) {
+        File file = logFile(repoDir);
+        byte[] start = new byte[2];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.read(start) < 2 || start[0] != (byte) 0xac
+                    || start[1] != (byte) 0xed) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        Command.CommitLog legacy =
+            Utils.readObject(file, Command.CommitLog.class);
+        ByteBuffer contents = ByteBuffer.allocate(HEADER_SIZE
+                + RECORD_SIZE * legacy.getLog().size());
+        contents.putInt(MAGIC).putInt(VERSION);
+        for (String id : legacy.getLog()) {
+            contents.put(Utils.fromHex(id));
+        }
+        Utils.writeContents(file, contents.array());
+    }
+
+    /** Returns the commit log file of REPODIR. */
+    private static File logFile(String repoDir) {
+        return new File(repoDir + "//logs//commits");
+    }
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Class giving access to the configuration of a repository, read
+ *  from its .gitlet/config, a file of KEY=VALUE lines.  A Java system
+ *  property gitlet.KEY overrides the setting in the file of every
+ *  repository.
+ *  @author Chris Sreesangkom
+ */
+class Config {
+
+    /** Returns the setting KEY of the repository with .gitlet
+     *  directory REPODIR, or DEFAULTVALUE if it is not set. */
+    static String get(String repoDir, String key, String defaultValue) {
+        String value = System.getProperty("gitlet." + key);
+        if (value != null) {
+            return value.trim();
+        }
+        return load(repoDir).getProperty(key, defaultValue).trim();
+    }
+
+    /** Returns the integer setting KEY of REPODIR, or DEFAULTVALUE if
+     *  it is not set or is not a number. */
+    static int getInt(String repoDir, String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(repoDir, key,
+                    Integer.toString(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /** Returns the boolean setting KEY of REPODIR, or DEFAULTVALUE if
+     *  it is not set. */
+    static boolean getBoolean(String repoDir, String key,
+                              boolean defaultValue) {
+        return Boolean.parseBoolean(get(repoDir, key,
+                Boolean.toString(defaultValue)));
+    }
+
+    /** Returns the settings in the config file of REPODIR, reading it
+     *  again whenever the file has changed since it was last read. */
+    private static Properties load(String repoDir) {
+        File file = new File(repoDir + "//config");
+        String stamp = file.lastModified() + ":" + file.length();
+        Properties settings = SETTINGS.get(repoDir);
+        if (settings != null && stamp.equals(STAMPS.get(repoDir))) {
+            return settings;
+        }
+        settings = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                settings.load(in);
+            } catch (IOException e) {
+                throw Utils.error("Config file unreadable.");
+            }
+        }
+        SETTINGS.put(repoDir, settings);
+        STAMPS.put(repoDir, stamp);
+        return settings;
+    }
+
+    /** The settings read from the config files, by .gitlet
+     *  directory. */
+    private static final Map<String, Properties> SETTINGS =
+        new ConcurrentHashMap<>();
+
+    /** The modification time and length of each config file when its
+     *  settings were read, by .gitlet directory. */
+    private static final Map<String, String> STAMPS =
+        new ConcurrentHashMap<>();
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Class computing and applying deltas, which express the contents
+ *  of an object as a patch against the contents of a base object.
+ *
+ *  A delta is the size of the result followed by a sequence of
+ *  instructions, each either COPY, an offset and a length, copying
+ *  a range of the base, or INSERT, a length and that many literal
+ *  bytes.  Sizes, offsets and lengths are unsigned varints.
+ *  @author Chris Sreesangkom
+ */
+class Delta {
+
+    /** Instruction copying a range of the base. */
+    private static final int COPY = 1;
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 2;
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling block hash. */
+    private static final int PRIME = 31;
+
+    /** Returns a delta turning BASE into TARGET. */
+    static byte[] compute(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        int literal = 0;
+        int p = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (p + BLOCK <= target.length) {
+            Integer offset = blocks.get(h);
+            if (offset != null && matches(base, offset, target, p)) {
+                int start = offset;
+                int from = p;
+                while (from > literal && start > 0
+                       && base[start - 1] == target[from - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = offset + BLOCK;
+                int to = p + BLOCK;
+                while (end < base.length && to < target.length
+                       && base[end] == target[to]) {
+                    end += 1;
+                    to += 1;
+                }
+                writeInsert(out, target, literal, from);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, end - start);
+                p = to;
+                literal = to;
+                if (p + BLOCK <= target.length) {
+                    h = hash(target, p);
+                }
+            } else {
+                if (p + BLOCK < target.length) {
+                    h = (h - (target[p] & 0xff) * power) * PRIME
+                        + (target[p + BLOCK] & 0xff);
+                }
+                p += 1;
+            }
+        }
+        writeInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, size, length);
+                size += length;
+            } else if (op == INSERT) {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, length);
+                pos[0] += length;
+                size += length;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes an instruction inserting TARGET[FROM..TO-1] to OUT, if
+     *  that range is not empty. */
+    private static void writeInsert(ByteArrayOutputStream out,
+                                    byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns the hash of the block of BYTES starting at START. */
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + (bytes[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns true if the blocks of BASE at OFFSET and of TARGET at
+     *  START are equal. */
+    private static boolean matches(byte[] base, int offset, byte[] target,
+                                   int start) {
+        for (int i = 0; i < BLOCK; i += 1) {
+            if (base[offset + i] != target[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes the non-negative VALUE to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Returns the varint in BYTES at POS[0], advancing POS[0] past
+     *  it. */
+    private static int readVarint(byte[] bytes, int[] pos) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = bytes[pos[0]];
+            pos[0] += 1;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
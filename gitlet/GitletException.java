@@ -4,7 +4,7 @@ package gitlet;
  *  result of .getMessage() is the error message to be printed.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
 
     /** A GitletException with no message. */
@@ -17,4 +17,26 @@ class GitletException extends RuntimeException {
         super(msg);
     }
 
+    /** Exception indicating that a branch, commit, remote or file
+     *  named by the caller does not exist. */
+    public static class NotFound extends GitletException {
+
+        /** A NotFound with MSG as its message. */
+        NotFound(String msg) {
+            super(msg);
+        }
+    }
+
+    /** Exception indicating that an operation was refused because it
+     *  would overwrite work or history: untracked or uncommitted
+     *  files, a branch or remote that already exists, or remote
+     *  commits that have not been pulled. */
+    public static class Conflict extends GitletException {
+
+        /** A Conflict with MSG as its message. */
+        Conflict(String msg) {
+            super(msg);
+        }
+    }
+
 }
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Class caching the blob IDs of the working files of a repository,
+ *  keyed by their size, modification time and inode, so that unchanged
+ *  files do not have to be re-read and re-hashed on every command.
+ *  @author Chris Sreesangkom
+ */
+class Index implements Serializable {
+
+    /** Files modified within this many milliseconds of being hashed
+     *  are not cached, since a later change within the same
+     *  timestamp tick would go unnoticed. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** Number of files a hashing task handles without splitting. */
+    private static final int TASK_SIZE = 4;
+
+    /** Constructs an empty index. */
+    private Index() {
+        entries = new HashMap<>();
+        hashed = new HashMap<>();
+    }
+
+    /** Returns the index of the repository with .gitlet directory
+     *  REPODIR, whose working files are in WORKDIR, as last saved. */
+    static Index load(String repoDir, File workDir) {
+        Index index = null;
+        File file = new File(repoDir + "//index");
+        if (file.exists()) {
+            try {
+                index = Utils.readObject(file, Index.class);
+                index.hashed = new HashMap<>();
+            } catch (IllegalArgumentException e) {
+                index = null;
+            }
+        }
+        if (index == null) {
+            index = new Index();
+        }
+        index.repoDir = repoDir;
+        index.workDir = workDir;
+        return index;
+    }
+
+    /** Returns the Sha-1 of the blob for the working file FILENAME,
+     *  re-hashing it only if its stat data differs from the cached
+     *  entry. */
+    String getSha1(String fileName) {
+        File file = new File(workDir, fileName);
+        Entry stat = Entry.of(file);
+        String sha1 = lookup(fileName, stat);
+        if (sha1 == null) {
+            sha1 = Blob.getSha1(file);
+            update(fileName, stat, sha1);
+        }
+        return sha1;
+    }
+
+    /** Returns the Sha-1 of the blob for the working file FILENAME,
+     *  making sure the blob is in the repository.  A file that has to
+     *  be re-hashed is stored in the same pass. */
+    String store(String fileName) {
+        File file = new File(workDir, fileName);
+        Entry stat = Entry.of(file);
+        String sha1 = lookup(fileName, stat);
+        if (sha1 == null || !ObjectStore.contains(repoDir, sha1)) {
+            sha1 = Blob.createBlobObj(repoDir, file);
+            update(fileName, stat, sha1);
+        }
+        return sha1;
+    }
+
+    /** Hashes those of the working files FILENAMES whose stat data
+     *  differs from their cached entry, spreading the work over
+     *  core.parallelism threads (by default, one per processor), so
+     *  that later calls to getSha1 for them are answered from the
+     *  cache.  If STORE, also stores their blobs, as store would. */
+    void hashAll(Collection<String> fileNames, boolean store) {
+        String[] names = fileNames.toArray(new String[0]);
+        Entry[] stats = new Entry[names.length];
+        String[] hashes = new String[names.length];
+        int parallelism = Config.getInt(repoDir, "core.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        if (parallelism <= 1 || names.length < 2) {
+            hashRange(names, stats, hashes, store, 0, names.length);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new HashTask(names, stats, hashes,
+                        store, 0, names.length));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int i = 0; i < names.length; i += 1) {
+            if (hashes[i] != null) {
+                update(names[i], stats[i], hashes[i]);
+            }
+        }
+    }
+
+    /** Discards what is known about the working file FILENAME,
+     *  after it has been rewritten. */
+    void forget(String fileName) {
+        hashed.remove(fileName);
+        if (entries.remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Returns the cached blob ID of working file NAME with stat data
+     *  STAT, or null if it has to be re-hashed.  Safe to call from
+     *  several threads while no thread calls update. */
+    private String lookup(String name, Entry stat) {
+        if (stat == null) {
+            return null;
+        }
+        Entry cached = entries.get(name);
+        if (stat.sameStat(cached)) {
+            return cached.sha1;
+        }
+        cached = hashed.get(name);
+        if (stat.sameStat(cached)) {
+            return cached.sha1;
+        }
+        return null;
+    }
+
+    /** Records SHA1 as the blob ID of working file NAME with stat
+     *  data STAT. */
+    private void update(String name, Entry stat, String sha1) {
+        if (stat == null) {
+            return;
+        }
+        stat.sha1 = sha1;
+        hashed.put(name, stat);
+        if (stat.mtime < System.currentTimeMillis() - RACY_WINDOW) {
+            entries.put(name, stat);
+            dirty = true;
+        } else if (entries.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Stats the files NAMES[FROM..TO-1] into STATS, and hashes those
+     *  that are not cached into HASHES, storing their blobs if STORE. */
+    private void hashRange(String[] names, Entry[] stats, String[] hashes,
+                           boolean store, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            File file = new File(workDir, names[i]);
+            stats[i] = Entry.of(file);
+            if (stats[i] == null) {
+                continue;
+            }
+            String sha1 = lookup(names[i], stats[i]);
+            if (!store && sha1 == null) {
+                hashes[i] = Blob.getSha1(file);
+            } else if (store && (sha1 == null
+                    || !ObjectStore.contains(repoDir, sha1))) {
+                hashes[i] = Blob.createBlobObj(repoDir, file);
+            }
+        }
+    }
+
+    /** Task hashing a range of files, split in halves until small
+     *  enough so that idle threads can steal the rest. */
+    private class HashTask extends RecursiveAction {
+
+        /** A task hashing NAMES[FROM..TO-1] into STATS and HASHES,
+         *  storing their blobs if STORE. */
+        HashTask(String[] names, Entry[] stats, String[] hashes,
+                 boolean store, int from, int to) {
+            this.names = names;
+            this.stats = stats;
+            this.hashes = hashes;
+            this.store = store;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                hashRange(names, stats, hashes, store, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask(names, stats, hashes, store,
+                                       from, mid),
+                        new HashTask(names, stats, hashes, store,
+                                     mid, to));
+            }
+        }
+
+        /** Names of all files being hashed. */
+        private final String[] names;
+        /** Stat data of all files being hashed. */
+        private final Entry[] stats;
+        /** Hashes of all files being hashed. */
+        private final String[] hashes;
+        /** True if the blobs of the files are to be stored. */
+        private final boolean store;
+        /** First file of the range. */
+        private final int from;
+        /** One past the last file of the range. */
+        private final int to;
+    }
+
+    /** Forgets the files hashed during the command that just ended,
+     *  so that the next command re-hashes those too recently modified
+     *  to be cached, which may have changed since without their stat
+     *  data changing. */
+    void endCommand() {
+        hashed.clear();
+    }
+
+    /** Writes the index back to its repository if it changed since it
+     *  was loaded or last saved. */
+    void save() {
+        if (dirty && new File(repoDir).isDirectory()) {
+            dirty = false;
+            Utils.writeObject(new File(repoDir + "//index"), this);
+        }
+    }
+
+    /** Class representing the cached stat data of one file. */
+    private static class Entry implements Serializable {
+
+        /** Returns the stat data of FILE, or null if it cannot
+         *  be read. */
+        static Entry of(File file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        file.toPath(), BasicFileAttributes.class);
+                Entry entry = new Entry();
+                entry.size = attrs.size();
+                entry.mtime = attrs.lastModifiedTime().toMillis();
+                Object key = attrs.fileKey();
+                entry.inode = key == null ? null : key.toString();
+                return entry;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /** Returns true if OTHER has the same size, modification
+         *  time and inode as this entry. */
+        boolean sameStat(Entry other) {
+            return other != null && size == other.size
+                    && mtime == other.mtime
+                    && (inode == null ? other.inode == null
+                        : inode.equals(other.inode));
+        }
+
+        /** Size of the file in bytes. */
+        private long size;
+        /** Modification time of the file in milliseconds. */
+        private long mtime;
+        /** Inode (file key) of the file, or null if unsupported. */
+        private String inode;
+        /** Blob ID of the file contents. */
+        private String sha1;
+    }
+
+    /** Map pairing working file names with their cached entry. */
+    private HashMap<String, Entry> entries;
+
+    /** Map pairing working file names with the entry computed when
+     *  they were hashed during this command, including files too
+     *  recently modified to be cached in ENTRIES. */
+    private transient HashMap<String, Entry> hashed;
+
+    /** True if the index has changed since it was loaded. */
+    private transient boolean dirty;
+
+    /** The .gitlet directory of the repository. */
+    private transient String repoDir;
+
+    /** The working directory of the repository. */
+    private transient File workDir;
+}
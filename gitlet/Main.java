@@ -1,7 +1,11 @@
 package gitlet;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Chris Sreesagkom
@@ -9,6 +13,9 @@ import java.io.File;
 
 public class Main {
 
+    /** Port on which gitlet serve listens by default. */
+    private static final int DEFAULT_PORT = 9418;
+
     /** Method for checking if ARGS is legal. */
     private static void checkLegalArg(String[] args) {
         if (args.length == 0) {
@@ -27,8 +34,11 @@ public class Main {
             if (noParam.contains(args[0])
                     || oneParam.contains(args[0])
                     || twoParam.contains(args[0])
+                    || args[0].equals("add")
                     || args[0].equals("commit")
-                    || args[0].equals("checkout")) {
+                    || args[0].equals("find")
+                    || args[0].equals("checkout")
+                    || args[0].equals("serve")) {
                 if (!gitletFile.exists()) {
                     throw Utils.error(
                             "Not in an initialized Gitlet directory.");
@@ -56,6 +66,12 @@ public class Main {
                         "Incorrect operands.");
             }
         }
+        if (args[0].equals("serve") && args.length > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (args[0].equals("add") && args.length < 2) {
+            throw Utils.error("Incorrect operands.");
+        }
         if (args[0].equals("commit")) {
             if (args.length == 1
                     || args[1].equals("")) {
@@ -74,20 +90,21 @@ public class Main {
         noParam.add("log");
         noParam.add("global-log");
         noParam.add("status");
+        noParam.add("migrate");
+        noParam.add("gc");
         return noParam;
     }
 
     /** Returns hashset of commands with one parameter. */
     private static HashSet<String> getOneParam() {
         HashSet<String> oneParam = new HashSet<>();
-        oneParam.add("add");
         oneParam.add("rm");
-        oneParam.add("find");
         oneParam.add("branch");
         oneParam.add("rm-branch");
         oneParam.add("reset");
         oneParam.add("merge");
         oneParam.add("rm-remote");
+        oneParam.add("add-alternate");
         return oneParam;
     }
 
@@ -120,15 +137,66 @@ public class Main {
         throw Utils.error("Incorrect operands.");
     }
 
+    /** Perform find on ARGS: an exact search for a message, or a
+     *  search for messages containing some text or a match of a
+     *  regular expression. */
+    private static void find(String[] args) {
+        if (args.length == 2) {
+            Command.find(args[1]);
+            return;
+        } else if (args.length == 3) {
+            if (args[1].equals("--contains")) {
+                Command.findContaining(args[2]);
+                return;
+            } else if (args[1].equals("--regex")) {
+                Command.findMatching(args[2]);
+                return;
+            }
+        }
+        throw Utils.error("Incorrect operands.");
+    }
+
+    /** Perform serve on ARGS, on the default port unless one is
+     *  given. */
+    private static void serve(String[] args) {
+        int port = DEFAULT_PORT;
+        if (args.length == 2) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        Command.serve(port);
+    }
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ..., or java gitlet.Main --batch, which
+     *  reads commands from the standard input, one per line. */
     public static void main(String... args) {
+        if (args.length > 0 && args[0].equals(Batch.OPTION)) {
+            if (args.length != 1) {
+                Utils.message("Incorrect operands.");
+                return;
+            }
+            Batch.run(new BufferedReader(new InputStreamReader(System.in,
+                    StandardCharsets.UTF_8)), System.out);
+            return;
+        }
+        run(args);
+        save();
+    }
+
+    /** Runs the command ARGS, printing its output and any error
+     *  message.  Returns true if it succeeded. */
+    static boolean run(String... args) {
         try {
             checkLegalArg(args);
             switch (args[0]) {
             case "init":  Command.init();
                  break;
-            case "add": Command.add(args[1]);
+            case "add":
+                Command.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit": Command.commit(args[1]);
                 break;
@@ -138,7 +206,7 @@ public class Main {
                 break;
             case "global-log":  Command.globalLog();
                     break;
-            case "find":  Command.find(args[1]);
+            case "find":  find(args);
                     break;
             case "status":  Command.status();
                     break;
@@ -153,24 +221,45 @@ public class Main {
                     break;
             case "merge": Command.merge(args[1]);
                     break;
+            case "migrate": Command.migrate();
+                    break;
+            case "gc": Command.gc();
+                    break;
             case "add-remote": Command.addRemote(args[1], args[2]);
                     break;
             case "rm-remote": Command.removeRemote(args[1]);
                     break;
+            case "add-alternate": Command.addAlternate(args[1]);
+                    break;
             case "push": Command.push(args[1], args[2]);
                     break;
             case "fetch": Command.fetch(args[1], args[2]);
                     break;
             case "pull": Command.pull(args[1], args[2]);
                     break;
-            default: Utils.message("No command with that name exists.");
+            case "serve": serve(args);
                     break;
+            default:
+                throw Utils.error("No command with that name exists.");
             }
+            return true;
         } catch (IndexOutOfBoundsException e) {
             Utils.message("Incorrect operands.");
         } catch (GitletException e) {
             Utils.message(e.getMessage());
         }
+        return false;
+    }
+
+    /** Ends the command just run, before the next one of a batch. */
+    static void endCommand() {
+        Command.endCommand();
+    }
+
+    /** Writes the state the commands run so far keep in memory back
+     *  to .gitlet. */
+    static void save() {
+        Command.save();
     }
 
 }
@@ -0,0 +1,512 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/** Class representing the index of the messages of the commits in
+ *  the commit log of a repository, which lets find answer exact,
+ *  substring and regular expression queries without reading commit
+ *  objects.
+ *
+ *  logs/messages holds a header (magic, version, number of commits
+ *  indexed and end of the records as a long) followed by one record
+ *  per commit, in commit log order: the raw ID, the length of the
+ *  message in UTF-8 and the message.  Records are appended as
+ *  commits are made or fetched, and any commits of the log missing
+ *  from it are added the next time it is updated.
+ *
+ *  logs/messages.idx maps each trigram (three consecutive bytes) of
+ *  the messages to the sorted offsets of the records containing it.
+ *  It holds a header (magic, version, number of trigrams, number of
+ *  records it covers and their end as a long), a table sorted by
+ *  trigram of entries (the trigram, the start and the length of its
+ *  offsets) and then the offsets.  A query for text of three bytes
+ *  or more only reads the records whose offsets are in the postings
+ *  of all of its trigrams, and the records appended since the
+ *  postings were written.  The postings are rewritten once those are
+ *  a large enough share.
+ *  @author Chris Sreesangkom
+ */
+class MessageIndex {
+
+    /** Magic number starting the messages file. */
+    private static final int MAGIC = 0x474d5347;
+    /** Magic number starting the postings file. */
+    private static final int IDX_MAGIC = 0x474d4958;
+    /** Version of both formats. */
+    private static final int VERSION = 1;
+    /** Size of the header of the messages file. */
+    private static final int HEADER_SIZE = 20;
+    /** Size of the header of the postings file. */
+    private static final int IDX_HEADER_SIZE = 24;
+    /** Size of one entry of the trigram table. */
+    private static final int ENTRY_SIZE = 12;
+    /** Size of a raw commit ID. */
+    private static final int ID_SIZE = 20;
+    /** Length of the grams indexed. */
+    private static final int GRAM = 3;
+    /** The postings are rewritten when this many records or more
+     *  are not covered by them... */
+    private static final int MIN_UNINDEXED = 256;
+    /** ... and those are at least this fraction of all records, so
+     *  that rewriting them costs amortized constant time per
+     *  commit. */
+    private static final double MAX_UNINDEXED_RATIO = 0.25;
+
+    /** Adds the commits of the commit log of the repository with
+     *  .gitlet directory REPODIR missing from its message index,
+     *  then rewrites the postings if too many records are not
+     *  covered by them. */
+    static synchronized void update(String repoDir) {
+        File file = messagesFile(repoDir);
+        ByteBuffer header = readHeader(file, MAGIC, HEADER_SIZE);
+        int count = 0;
+        long end = HEADER_SIZE;
+        if (header == null) {
+            postingsFile(repoDir).delete();
+        } else {
+            count = header.getInt(8);
+            end = header.getLong(12);
+        }
+        if (CommitLogFile.size(repoDir) <= count) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int added = 0;
+        for (String id : CommitLogFile.ids(repoDir, count)) {
+            byte[] message = Commit.getRemCommit(id, repoDir).getMessage()
+                .getBytes(StandardCharsets.UTF_8);
+            records.writeBytes(Utils.fromHex(id));
+            records.writeBytes(ByteBuffer.allocate(4)
+                    .putInt(message.length).array());
+            records.writeBytes(message);
+            added += 1;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(end);
+            raf.write(records.toByteArray());
+            raf.seek(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(count + added);
+            raf.writeLong(end + records.size());
+        } catch (IOException e) {
+            throw Utils.error("Message index update unsuccessful.");
+        }
+        count += added;
+        end += records.size();
+        ByteBuffer postings = readHeader(postingsFile(repoDir), IDX_MAGIC,
+                IDX_HEADER_SIZE);
+        int unindexed = count - (postings == null ? 0 : postings.getInt(12));
+        if (unindexed >= MIN_UNINDEXED
+                && unindexed >= count * MAX_UNINDEXED_RATIO) {
+            writePostings(repoDir, map(file, end), count);
+        }
+    }
+
+    /** Returns the IDs of the commits of REPODIR whose message is
+     *  MESSAGE, in commit log order. */
+    static List<String> findExact(String repoDir, String message) {
+        return search(repoDir, message, message::equals);
+    }
+
+    /** Returns the IDs of the commits of REPODIR whose message
+     *  contains TEXT, in commit log order. */
+    static List<String> findContaining(String repoDir, String text) {
+        return search(repoDir, text, m -> m.contains(text));
+    }
+
+    /** Returns the IDs of the commits of REPODIR whose message
+     *  contains a match of PATTERN, in commit log order.  Only the
+     *  messages containing the longest run of literal text that every
+     *  match must include, if there is one, are tried. */
+    static List<String> findMatching(String repoDir, Pattern pattern) {
+        return search(repoDir, requiredLiteral(pattern.pattern()),
+                m -> pattern.matcher(m).find());
+    }
+
+    /** Returns the IDs of the commits of REPODIR whose message
+     *  passes TEST, in commit log order, trying only those whose
+     *  message contains LITERAL, unless it is null. */
+    private static List<String> search(String repoDir, String literal,
+                                       Predicate<String> test) {
+        update(repoDir);
+        File file = messagesFile(repoDir);
+        ByteBuffer header = readHeader(file, MAGIC, HEADER_SIZE);
+        ArrayList<String> result = new ArrayList<>();
+        if (header == null) {
+            return result;
+        }
+        ByteBuffer records = map(file, header.getLong(12));
+        long covered = HEADER_SIZE;
+        byte[] bytes = literal == null ? new byte[0]
+            : literal.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= GRAM) {
+            File postingsFile = postingsFile(repoDir);
+            ByteBuffer postings = readHeader(postingsFile, IDX_MAGIC,
+                    IDX_HEADER_SIZE);
+            if (postings != null) {
+                covered = postings.getLong(16);
+                for (int offset : candidates(map(postingsFile,
+                        postingsFile.length()), bytes)) {
+                    check(records, offset, test, result);
+                }
+            }
+        }
+        for (long offset = covered; offset < records.limit();
+             offset = next(records, offset)) {
+            check(records, (int) offset, test, result);
+        }
+        return result;
+    }
+
+    /** Adds the ID of the record of RECORDS at OFFSET to RESULT if
+     *  its message passes TEST. */
+    private static void check(ByteBuffer records, int offset,
+                              Predicate<String> test, List<String> result) {
+        byte[] message = new byte[records.getInt(offset + ID_SIZE)];
+        records.get(offset + ID_SIZE + 4, message);
+        if (test.test(new String(message, StandardCharsets.UTF_8))) {
+            byte[] raw = new byte[ID_SIZE];
+            records.get(offset, raw);
+            result.add(Utils.toHex(raw));
+        }
+    }
+
+    /** Returns the offset of the record of RECORDS after the one at
+     *  OFFSET. */
+    private static long next(ByteBuffer records, long offset) {
+        return offset + ID_SIZE + 4 + records.getInt((int) offset + ID_SIZE);
+    }
+
+    /** Returns the sorted offsets of the records containing all the
+     *  trigrams of BYTES according to POSTINGS. */
+    private static int[] candidates(ByteBuffer postings, byte[] bytes) {
+        int trigrams = postings.getInt(8);
+        IntBuffer table = postings.position(IDX_HEADER_SIZE).slice()
+            .asIntBuffer();
+        ArrayList<IntBuffer> lists = new ArrayList<>();
+        for (int gram : grams(bytes, bytes.length)) {
+            int lo = 0;
+            int hi = trigrams - 1;
+            IntBuffer list = null;
+            while (lo <= hi && list == null) {
+                int mid = (lo + hi) >>> 1;
+                int key = table.get(mid * 3);
+                if (key < gram) {
+                    lo = mid + 1;
+                } else if (key > gram) {
+                    hi = mid - 1;
+                } else {
+                    int start = IDX_HEADER_SIZE + trigrams * ENTRY_SIZE
+                        + table.get(mid * 3 + 1) * 4;
+                    list = postings.position(start).slice().asIntBuffer()
+                        .limit(table.get(mid * 3 + 2));
+                }
+            }
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(IntBuffer::limit));
+        IntBuffer shortest = lists.get(0);
+        int[] result = new int[shortest.limit()];
+        int size = 0;
+        for (int i = 0; i < shortest.limit(); i += 1) {
+            int offset = shortest.get(i);
+            boolean inAll = true;
+            for (IntBuffer list : lists.subList(1, lists.size())) {
+                if (!contains(list, offset)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) {
+                result[size] = offset;
+                size += 1;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /** Returns true if the sorted LIST contains VALUE. */
+    private static boolean contains(IntBuffer list, int value) {
+        int lo = 0;
+        int hi = list.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int item = list.get(mid);
+            if (item < value) {
+                lo = mid + 1;
+            } else if (item > value) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Rewrites the postings of REPODIR to cover all of RECORDS, of
+     *  which there are COUNT.  The records are read twice, first to
+     *  count the postings of each trigram, then to fill them in, so
+     *  that they take one array. */
+    private static void writePostings(String repoDir, ByteBuffer records,
+                                      int count) {
+        TreeMap<Integer, int[]> counts = new TreeMap<>();
+        for (long offset = HEADER_SIZE; offset < records.limit();
+             offset = next(records, offset)) {
+            for (int gram : recordGrams(records, (int) offset)) {
+                counts.computeIfAbsent(gram, g -> new int[3])[0] += 1;
+            }
+        }
+        int total = 0;
+        for (int[] entry : counts.values()) {
+            entry[1] = total;
+            total += entry[0];
+        }
+        int[] offsets = new int[total];
+        for (long offset = HEADER_SIZE; offset < records.limit();
+             offset = next(records, offset)) {
+            for (int gram : recordGrams(records, (int) offset)) {
+                int[] entry = counts.get(gram);
+                offsets[entry[1] + entry[2]] = (int) offset;
+                entry[2] += 1;
+            }
+        }
+        File file = postingsFile(repoDir);
+        try {
+            File tmp = File.createTempFile("tmp-idx", null,
+                    file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(counts.size());
+                out.writeInt(count);
+                out.writeLong(records.limit());
+                for (var entry : counts.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue()[1]);
+                    out.writeInt(entry.getValue()[0]);
+                }
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw Utils.error("Message index update unsuccessful.");
+        }
+    }
+
+    /** Returns the distinct trigrams of the message of the record of
+     *  RECORDS at OFFSET. */
+    private static int[] recordGrams(ByteBuffer records, int offset) {
+        byte[] message = new byte[records.getInt(offset + ID_SIZE)];
+        records.get(offset + ID_SIZE + 4, message);
+        return grams(message, message.length);
+    }
+
+    /** Returns the distinct trigrams of the first LENGTH of BYTES, in
+     *  increasing order. */
+    private static int[] grams(byte[] bytes, int length) {
+        if (length < GRAM) {
+            return new int[0];
+        }
+        int[] result = new int[length - GRAM + 1];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8
+                | (bytes[i + 2] & 0xff);
+        }
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i += 1) {
+            if (size == 0 || result[size - 1] != result[i]) {
+                result[size] = result[i];
+                size += 1;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /** Returns the longest run of literal text that every match of
+     *  the regular expression REGEX contains, or null if there is
+     *  none of three characters or more.  Only text outside groups
+     *  and classes, and not made optional by a quantifier, counts;
+     *  escapes such as \x41 end a run, operand and all.  Expressions
+     *  with alternatives, flags, quoting or unknown escapes are not
+     *  analysed at all.  REGEX is walked by code point, so that a
+     *  quantifier drops the whole of a supplementary character. */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("|") || regex.contains("(?")
+                || regex.contains("\\Q")) {
+            return null;
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i += 1) {
+            int c = regex.codePointAt(i);
+            boolean literal = false;
+            if (c == '\\' && i + 1 < regex.length()) {
+                i += 1;
+                c = regex.codePointAt(i);
+                literal = !Character.isLetterOrDigit(c);
+                if (!literal) {
+                    i = escapeEnd(regex, i);
+                } else {
+                    i += Character.charCount(c) - 1;
+                }
+            } else if (c == '[') {
+                i = classEnd(regex, i);
+            } else if (c == '{') {
+                i = regex.indexOf('}', i);
+            } else if (c == '(') {
+                depth += 1;
+            } else if (c == ')') {
+                depth -= 1;
+            } else {
+                literal = ".^$?*+".indexOf(c) < 0;
+                i += Character.charCount(c) - 1;
+            }
+            if (i < 0) {
+                return null;
+            }
+            char after = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+            boolean optional = "?*{".indexOf(after) >= 0;
+            if (literal && depth == 0 && !optional) {
+                run.appendCodePoint(c);
+            }
+            if (!literal || depth > 0 || optional || after == '+') {
+                if (run.length() > best.length()) {
+                    best = run.toString();
+                }
+                run.setLength(0);
+            }
+        }
+        if (run.length() > best.length()) {
+            best = run.toString();
+        }
+        return best.length() >= GRAM ? best : null;
+    }
+
+    /** Returns the position of the last character of the escape of
+     *  REGEX whose letter or digit is at START, past any operand such
+     *  as the digits of \x41 or the name of \p{Lu}, or -1 if it is
+     *  not a known escape. */
+    private static int escapeEnd(String regex, int start) {
+        char c = regex.charAt(start);
+        int i = start + 1;
+        char next = i < regex.length() ? regex.charAt(i) : 0;
+        if ("dDsSwWBAGZzhHvVRXntrfae".indexOf(c) >= 0) {
+            return start;
+        } else if ("bxpPN".indexOf(c) >= 0 && next == '{') {
+            return regex.indexOf('}', i);
+        } else if (c == 'b') {
+            return start;
+        } else if (c == 'x') {
+            return start + 2;
+        } else if (c == 'u') {
+            return start + 4;
+        } else if (c == 'c' || c == 'p' || c == 'P') {
+            return i;
+        } else if (c == 'k') {
+            return regex.indexOf('>', i);
+        } else if (c == '0') {
+            while (i < regex.length() && i - start <= 3
+                   && regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+                i += 1;
+            }
+            if (i - start == 4 && regex.charAt(start + 1) > '3') {
+                i -= 1;
+            }
+            return i - 1;
+        } else if (c >= '1' && c <= '9') {
+            while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                i += 1;
+            }
+            return i - 1;
+        }
+        return -1;
+    }
+
+    /** Returns the position of the bracket closing the character class
+     *  of REGEX opened at START, or -1. */
+    private static int classEnd(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i += 1;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i += 1;
+        }
+        for (; i < regex.length(); i += 1) {
+            if (regex.charAt(i) == '\\') {
+                i += 1;
+            } else if (regex.charAt(i) == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the header of FILE, of SIZE bytes, if it starts with
+     *  MAGIC and the current version, and null otherwise. */
+    private static ByteBuffer readHeader(File file, int magic, int size) {
+        if (file.length() < size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(header.array());
+        } catch (IOException e) {
+            return null;
+        }
+        if (header.getInt(0) != magic || header.getInt(4) != VERSION) {
+            return null;
+        }
+        return header;
+    }
+
+    /** Returns a read-only mapping of the first LENGTH bytes of
+     *  FILE. */
+    private static ByteBuffer map(File file, long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException e) {
+            throw Utils.error("Message index unreadable.");
+        }
+    }
+
+    /** Returns the messages file of REPODIR. */
+    private static File messagesFile(String repoDir) {
+        return new File(repoDir + "//logs//messages");
+    }
+
+    /** Returns the postings file of REPODIR. */
+    private static File postingsFile(String repoDir) {
+        return new File(repoDir + "//logs//messages.idx");
+    }
+}
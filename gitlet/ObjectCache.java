@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/** Class representing a cache of objects decoded from the object
+ *  stores of repositories, such as commits and trees, so that walks
+ *  over history decode each object once.  Values are keyed by
+ *  repository and ID and weighted by the size of their encoding;
+ *  once the total exceeds core.objectCacheSize bytes, the least
+ *  recently used are evicted.  Cached values are shared, so callers
+ *  must not modify them.
+ *
+ *  A gitlet command runs in its own process, so the caches last for
+ *  one command.  Batch mode and gitlet serve clear them after each
+ *  command or client, so that changes made by other processes are
+ *  seen, unless core.keepCacheWarm is set, in which case they are
+ *  kept for the life of the process.
+ *  @param <T> the type of the cached values.
+ *  @author Chris Sreesangkom
+ */
+class ObjectCache<T> {
+
+    /** Default maximum total size of the values of a cache. */
+    private static final int DEFAULT_SIZE = 1 << 24;
+
+    /** An empty cache, cleared by release along with the others. */
+    ObjectCache() {
+        synchronized (CACHES) {
+            CACHES.add(this);
+        }
+    }
+
+    /** Returns the cached value of object ID of REPODIR, or null,
+     *  counting a hit or a miss. */
+    synchronized T get(String repoDir, String id) {
+        Slot<T> slot = entries.get(key(repoDir, id));
+        if (slot == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return slot.value;
+    }
+
+    /** Caches VALUE, decoded from SIZE bytes, as the value of object
+     *  ID of REPODIR. */
+    synchronized void put(String repoDir, String id, T value, int size) {
+        if (limit < 0) {
+            limit = Config.getInt(repoDir, "core.objectCacheSize",
+                    DEFAULT_SIZE);
+        }
+        if (size > limit) {
+            return;
+        }
+        Slot<T> old = entries.put(key(repoDir, id), new Slot<>(value, size));
+        total += size - (old == null ? 0 : old.size);
+        Iterator<Slot<T>> eldest = entries.values().iterator();
+        while (total > limit) {
+            total -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /** Drops the value of object ID of REPODIR, if cached, as when the
+     *  object is rewritten. */
+    synchronized void remove(String repoDir, String id) {
+        Slot<T> old = entries.remove(key(repoDir, id));
+        if (old != null) {
+            total -= old.size;
+        }
+    }
+
+    /** Drops every value, and rereads the limit on next use. */
+    synchronized void clear() {
+        entries.clear();
+        total = 0;
+        limit = -1;
+    }
+
+    /** Returns the number of lookups that found their value. */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Returns the number of values cached. */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Clears every cache at the end of a command on REPODIR, unless
+     *  its core.keepCacheWarm is set. */
+    static void release(String repoDir) {
+        if (Config.getBoolean(repoDir, "core.keepCacheWarm", false)) {
+            return;
+        }
+        synchronized (CACHES) {
+            for (ObjectCache<?> cache : CACHES) {
+                cache.clear();
+            }
+        }
+    }
+
+    /** Returns the key of object ID of REPODIR. */
+    private static String key(String repoDir, String id) {
+        return repoDir + ":" + id;
+    }
+
+    /** Class representing a cached value and its size. */
+    private static class Slot<T> {
+
+        /** A slot holding VALUE of size SIZE. */
+        Slot(T value, int size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        /** The cached value. */
+        private final T value;
+        /** The size of its encoding. */
+        private final int size;
+    }
+
+    /** Every cache, for release. */
+    private static final List<ObjectCache<?>> CACHES = new ArrayList<>();
+
+    /** Cached values by key, in access order. */
+    private final LinkedHashMap<String, Slot<T>> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total size of the cached values. */
+    private long total;
+    /** Maximum total size, or -1 until it has been read. */
+    private long limit = -1;
+    /** Number of lookups that found their value. */
+    private long hits;
+    /** Number of lookups that did not. */
+    private long misses;
+}
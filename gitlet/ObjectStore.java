@@ -0,0 +1,1035 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Class giving access to the objects of a repository, whether
+ *  they are stored as loose files under objects/xx/ or folded
+ *  into packs under objects/pack/.
+ *
+ *  Objects are stored behind a four-byte header: a zero byte, the
+ *  letter G, the type tag and the encoding, which is either
+ *  DEFLATED (zlib) or STORED (uncompressed); gc may also pack a blob
+ *  as a DELTA against another one.  Objects written by earlier
+ *  versions have no header and are read as they are.
+ *
+ *  A repository may also read objects from the stores of other
+ *  repositories on the same machine, its alternates, listed in
+ *  objects/info/alternates as one .gitlet directory per line,
+ *  relative to its own .gitlet directory unless absolute.  Objects
+ *  are only ever written to the repository's own store.
+ *
+ *  The packs and alternates of a repository are read once and kept.
+ *  Other processes may change them meanwhile, as gc and add-alternate
+ *  do, so a lookup that misses reads them again first if the pack
+ *  directory or the alternates file has changed since.
+ *  @author Chris Sreesangkom
+ */
+class ObjectStore {
+
+    /** Type tag of a blob. */
+    static final byte BLOB = 1;
+    /** Type tag of a commit. */
+    static final byte COMMIT = 2;
+    /** Type tag of a tree. */
+    static final byte TREE = 3;
+    /** Type tag of a chunk of a chunked blob. */
+    static final byte CHUNK = 4;
+    /** Type tag of a blob stored as a list of chunks. */
+    static final byte CHUNKED = 5;
+
+    /** First byte of the object header. */
+    private static final byte MAGIC0 = 0;
+    /** Second byte of the object header. */
+    private static final byte MAGIC1 = 'G';
+    /** Size of the object header. */
+    private static final int HEADER_SIZE = 4;
+    /** Encoding of objects compressed with zlib. */
+    private static final byte DEFLATED = 'z';
+    /** Encoding of objects stored uncompressed. */
+    private static final byte STORED = 's';
+    /** Encoding of objects stored in a pack as a delta against a
+     *  base object: the raw ID of the base followed by the deflated
+     *  delta. */
+    private static final byte DELTA = 'd';
+    /** Size of a raw object ID. */
+    private static final int ID_SIZE = 20;
+    /** A delta is kept only if it is at most this fraction of the
+     *  size of the object stored whole. */
+    private static final double MAX_DELTA_RATIO = 0.5;
+    /** Default size in bytes of the cache of delta bases. */
+    private static final int DEFAULT_BASE_CACHE_SIZE = 1 << 24;
+    /** Objects smaller than this many bytes are not compressed. */
+    private static final int MIN_DEFLATE_SIZE = 64;
+
+    /** Loose objects larger than this many bytes are left loose
+     *  by gc, so that every pack can be memory-mapped whole. */
+    private static final long MAX_PACKED_SIZE = 1L << 26;
+    /** A pack is closed and a new one started once it grows past
+     *  this many bytes. */
+    private static final long MAX_PACK_SIZE = 1L << 30;
+    /** Size of the buffer through which files are streamed. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the contents of object ID in the repository with
+     *  .gitlet directory REPODIR.  Throws IllegalArgumentException
+     *  if there is no such object. */
+    static byte[] read(String repoDir, String id) {
+        byte[] stored = readStored(repoDir, id);
+        if (hasHeader(stored) && stored[3] == DELTA) {
+            return resolve(repoDir, stored);
+        } else if (typeOfStored(stored) != CHUNKED) {
+            return decode(stored);
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (String chunk : Chunker.chunkIDs(decode(stored))) {
+            result.writeBytes(read(repoDir, chunk));
+        }
+        return result.toByteArray();
+    }
+
+    /** Returns a stream of the contents of object ID in REPODIR,
+     *  decompressing them as they are read, and reading the chunks
+     *  of a chunked blob one after the other.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    static InputStream open(String repoDir, String id) {
+        File loose = findLoose(repoDir, id);
+        try {
+            InputStream in;
+            if (loose != null) {
+                in = new BufferedInputStream(new FileInputStream(loose));
+            } else {
+                in = new ByteArrayInputStream(readStored(repoDir, id));
+            }
+            in.mark(HEADER_SIZE);
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (!hasHeader(header)) {
+                in.reset();
+                return in;
+            } else if (header[3] == DELTA) {
+                in.close();
+                return new ByteArrayInputStream(read(repoDir, id));
+            } else if (header[3] == DEFLATED) {
+                in = new InflaterInputStream(in);
+            }
+            if (header[2] == CHUNKED) {
+                List<String> chunks;
+                try (InputStream list = in) {
+                    chunks = Chunker.chunkIDs(list.readAllBytes());
+                }
+                Iterator<String> next = chunks.iterator();
+                return new SequenceInputStream(new Enumeration<>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return next.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        return open(repoDir, next.next());
+                    }
+                });
+            }
+            return in;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes the contents of blob ID in REPODIR to FILE,
+     *  decompressing them on the way. */
+    static void copyTo(String repoDir, String id, File file) {
+        try (InputStream in = open(repoDir, id)) {
+            if (file.isDirectory()) {
+                throw new IOException("cannot overwrite directory");
+            }
+            Files.copy(in, file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Returns the stored (possibly compressed) form of object ID
+     *  in REPODIR or its alternates. */
+    private static byte[] readStored(String repoDir, String id) {
+        do {
+            for (String dir : stores(repoDir)) {
+                byte[] stored = readOwn(dir, id);
+                if (stored != null) {
+                    return stored;
+                }
+            }
+        } while (refresh(repoDir));
+        throw new IllegalArgumentException("no object " + id);
+    }
+
+    /** Returns the stored form of object ID in the own store of
+     *  REPODIR, or null if it is not there. */
+    private static byte[] readOwn(String repoDir, String id) {
+        File loose = looseFile(repoDir, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack pack : packs(repoDir)) {
+            byte[] stored = pack.read(id);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        return null;
+    }
+
+    /** Returns true if object ID is in REPODIR or its alternates. */
+    static boolean contains(String repoDir, String id) {
+        do {
+            for (String dir : stores(repoDir)) {
+                if (containsOwn(dir, id)) {
+                    return true;
+                }
+            }
+        } while (refresh(repoDir));
+        return false;
+    }
+
+    /** Forgets the alternates of REPODIR and the packs of its stores
+     *  if their files have changed since they were read.  Returns
+     *  true if any had. */
+    private static boolean refresh(String repoDir) {
+        boolean changed = false;
+        if (changedSinceRead(alternatesFile(repoDir))) {
+            ALTERNATES.remove(repoDir);
+            changed = true;
+        }
+        for (String dir : stores(repoDir)) {
+            if (changedSinceRead(packDir(dir))) {
+                PACKS.put(dir, listPacks(dir,
+                        PACKS.getOrDefault(dir, List.of())));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Returns true if FILE was read and has been modified since. */
+    private static boolean changedSinceRead(File file) {
+        Long read = READ_TIMES.get(file.getPath());
+        return read != null && read != file.lastModified();
+    }
+
+    /** Returns true if object ID is in the own store of REPODIR. */
+    private static boolean containsOwn(String repoDir, String id) {
+        if (looseFile(repoDir, id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs(repoDir)) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the loose file of object ID in REPODIR or its
+     *  alternates, or null if it is only packed or missing. */
+    private static File findLoose(String repoDir, String id) {
+        for (String dir : stores(repoDir)) {
+            File loose = looseFile(dir, id);
+            if (loose.isFile()) {
+                return loose;
+            }
+        }
+        return null;
+    }
+
+    /** Writes CONTENTS as the object ID of type TYPE in REPODIR,
+     *  unless it already exists. */
+    static void write(String repoDir, String id, byte type,
+                      byte[] contents) {
+        if (!contains(repoDir, id)) {
+            replace(repoDir, id, type, contents);
+        }
+    }
+
+    /** Writes CONTENTS as the loose object ID of type TYPE in
+     *  REPODIR, overwriting any loose copy. A loose object takes
+     *  precedence over a packed one with the same ID. */
+    static void replace(String repoDir, String id, byte type,
+                        byte[] contents) {
+        writeStored(repoDir, id, encode(type, contents));
+    }
+
+    /** Streams the contents of FILE into a loose object of type TYPE
+     *  in REPODIR, feeding them to DIGEST on the way, and returns the
+     *  hex digest as the ID of the object.  The file is read once,
+     *  through a fixed-size buffer, into a temporary file that is
+     *  then renamed, or deleted if the object already exists. */
+    static String writeFile(String repoDir, byte type,
+                            MessageDigest digest, File file) {
+        File tmp = null;
+        try {
+            Path dir = new File(repoDir + "//objects").toPath();
+            tmp = Files.createTempFile(dir, "tmp_", null).toFile();
+            boolean deflate = file.length() >= MIN_DEFLATE_SIZE;
+            try (InputStream in = new FileInputStream(file);
+                 OutputStream raw = new FileOutputStream(tmp)) {
+                raw.write(new byte[] {MAGIC0, MAGIC1, type,
+                                      deflate ? DEFLATED : STORED});
+                OutputStream out = deflate
+                    ? new DeflaterOutputStream(raw, new Deflater(),
+                            BUFFER_SIZE) : raw;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+                if (deflate) {
+                    ((DeflaterOutputStream) out).finish();
+                }
+            }
+            String id = Utils.toHex(digest.digest());
+            if (contains(repoDir, id)) {
+                tmp.delete();
+            } else {
+                File loose = looseFile(repoDir, id);
+                loose.getParentFile().mkdir();
+                Files.move(tmp.toPath(), loose.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return id;
+        } catch (IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Writes STORED, the stored form of object ID, as a loose
+     *  object of REPODIR.  The object is written to a temporary file
+     *  that is then renamed, so that readers, and other threads
+     *  writing the same object, never see it half written. */
+    private static void writeStored(String repoDir, String id,
+                                    byte[] stored) {
+        File loose = looseFile(repoDir, id);
+        loose.getParentFile().mkdir();
+        try {
+            Path tmp = Files.createTempFile(
+                    new File(repoDir + "//objects").toPath(), "tmp_", null);
+            Files.write(tmp, stored);
+            Files.move(tmp, loose.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Checks that STORED, the stored form of an object received
+     *  from another repository, is object ID: that its contents hash
+     *  to ID, and that the objects it refers to are in REPODIR
+     *  already, so that having an object still means having all it
+     *  refers to.  A commit ID hashes the blob mapping it was made
+     *  from, which its encoding no longer holds, so a commit is
+     *  checked for naming ID itself instead; one written by an
+     *  earlier version, which would have to be deserialized, is
+     *  refused.  Throws IllegalArgumentException if STORED is not
+     *  object ID. */
+    static void verify(String repoDir, String id, byte[] stored) {
+        byte[] contents = decode(withHeader(stored));
+        ArrayList<String> refs = new ArrayList<>();
+        String actual;
+        switch (typeOfStored(stored)) {
+        case BLOB:
+            actual = Blob.getSha1(contents);
+            break;
+        case CHUNK:
+            actual = Utils.sha1("chunk", contents);
+            break;
+        case CHUNKED:
+            MessageDigest digest = Utils.sha1Digest("blob");
+            for (String chunk : Chunker.chunkIDs(contents)) {
+                digest.update(read(repoDir, chunk));
+            }
+            actual = Utils.toHex(digest.digest());
+            break;
+        case TREE:
+            actual = Utils.sha1("tree", contents);
+            refs.addAll(Tree.entryIDs(contents));
+            break;
+        case COMMIT:
+            if (Utils.isSerialized(contents)) {
+                throw new IllegalArgumentException(
+                        "commit " + id + " must be migrated first");
+            }
+            Commit commit = Commit.decode(repoDir, contents);
+            actual = commit.getID();
+            refs.add(commit.getTreeID());
+            if (!commit.getParentID().equals("None")) {
+                refs.add(commit.getParentID());
+            }
+            if (commit.isMergeCommit()) {
+                refs.add(commit.getSecondParentID());
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown object type");
+        }
+        if (!actual.equals(id)) {
+            throw new IllegalArgumentException(
+                    "object " + id + " does not match its contents");
+        }
+        for (String ref : refs) {
+            if (!contains(repoDir, ref)) {
+                throw new IllegalArgumentException(
+                        "object " + id + " refers to missing " + ref);
+            }
+        }
+    }
+
+    /** Returns the type tag of object ID in REPODIR.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    static byte type(String repoDir, String id) {
+        return typeOfStored(readStored(repoDir, id));
+    }
+
+    /** Returns the stored form of object ID in REPODIR as it is sent
+     *  to another repository: with a header, and never as a delta,
+     *  whose base the receiver may lack. */
+    static byte[] export(String repoDir, String id) {
+        byte[] stored = withHeader(readStored(repoDir, id));
+        if (stored[3] == DELTA) {
+            stored = encode(stored[2], read(repoDir, id));
+        }
+        return stored;
+    }
+
+    /** Stores STORED, the stored form of object ID as returned by
+     *  export, in REPODIR, unless it is already there. */
+    static void put(String repoDir, String id, byte[] stored) {
+        if (!contains(repoDir, id)) {
+            writeStored(repoDir, id, withHeader(stored));
+        }
+    }
+
+    /** Stores object ID of FROMDIR in TODIR as a hard link to its
+     *  loose file, which is safe since object files are never
+     *  changed, only replaced.  Returns false if the object is
+     *  packed, is a chunked blob, whose chunks the caller has to
+     *  check, or cannot be linked, and true if it is linked or
+     *  already in TODIR. */
+    static boolean link(String fromDir, String toDir, String id) {
+        File source = findLoose(fromDir, id);
+        if (source == null) {
+            return false;
+        }
+        if (typeOfStored(readHeader(source)) == CHUNKED) {
+            return false;
+        }
+        try {
+            if (contains(toDir, id)) {
+                return true;
+            }
+            File target = looseFile(toDir, id);
+            target.getParentFile().mkdir();
+            Files.createLink(target.toPath(), source.toPath());
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /** Returns true if the object stores of FROMDIR and TODIR are on
+     *  the same file system, so that objects can be linked. */
+    static boolean sameFileStore(String fromDir, String toDir) {
+        try {
+            return Files.getFileStore(Path.of(fromDir, "objects")).equals(
+                    Files.getFileStore(Path.of(toDir, "objects")));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Adds the repository with .gitlet directory OTHERDIR to the
+     *  alternates of REPODIR. */
+    static void addAlternate(String repoDir, String otherDir) {
+        File other = Path.of(otherDir).toAbsolutePath().normalize().toFile();
+        if (!new File(other, "objects").isDirectory()) {
+            throw Utils.error("Not a Gitlet directory.");
+        }
+        File file = alternatesFile(repoDir);
+        file.getParentFile().mkdirs();
+        try {
+            Files.writeString(file.toPath(), other.getPath() + "\n",
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw Utils.error("Alternates update unsuccessful.");
+        }
+        ALTERNATES.remove(repoDir);
+    }
+
+    /** Returns REPODIR followed by its alternates, read on first use.
+     *  Alternates of alternates are not followed. */
+    private static List<String> stores(String repoDir) {
+        List<String> result = ALTERNATES.get(repoDir);
+        if (result == null) {
+            result = new ArrayList<>();
+            result.add(repoDir);
+            File file = alternatesFile(repoDir);
+            READ_TIMES.put(file.getPath(), file.lastModified());
+            if (file.isFile()) {
+                for (String line
+                         : Utils.readContentsAsString(file).split("\n")) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    File other = new File(line);
+                    if (!other.isAbsolute()) {
+                        other = new File(repoDir, line);
+                    }
+                    if (!result.contains(other.getPath())) {
+                        result.add(other.getPath());
+                    }
+                }
+            }
+            ALTERNATES.put(repoDir, result);
+        }
+        return result;
+    }
+
+    /** Returns the IDs of the chunks of the object with stored form
+     *  STORED if it is a chunked blob, and otherwise an empty list. */
+    static List<String> chunksOf(byte[] stored) {
+        if (typeOfStored(stored) != CHUNKED) {
+            return List.of();
+        }
+        return Chunker.chunkIDs(decode(stored));
+    }
+
+    /** Deletes the loose copy of object ID in REPODIR, if any. */
+    static void deleteLoose(String repoDir, String id) {
+        looseFile(repoDir, id).delete();
+    }
+
+    /** Returns the sorted IDs of all objects in REPODIR whose ID
+     *  starts with PREFIX. */
+    static List<String> findByPrefix(String repoDir, String prefix) {
+        return findByPrefix(repoDir, prefix, Pack.ANY_TYPE);
+    }
+
+    /** Returns the sorted IDs of the objects of type TYPE in REPODIR
+     *  whose ID starts with PREFIX.  Packed objects are found by
+     *  binary search in the typed pack indices; the type of a loose
+     *  object is read from its header, which only happens for the
+     *  few loose objects with the prefix. */
+    static List<String> findByPrefix(String repoDir, String prefix,
+                                     byte type) {
+        TreeSet<String> result = new TreeSet<>();
+        collectByPrefix(repoDir, prefix, type, result);
+        if (result.isEmpty() && refresh(repoDir)) {
+            collectByPrefix(repoDir, prefix, type, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Adds the IDs of the objects of type TYPE in REPODIR whose ID
+     *  starts with PREFIX to RESULT. */
+    private static void collectByPrefix(String repoDir, String prefix,
+                                        byte type, TreeSet<String> result) {
+        for (String dir : stores(repoDir)) {
+            if (prefix.length() >= 2) {
+                List<String> loose = Utils.plainFilenamesIn(
+                        dir + "//objects//" + prefix.substring(0, 2));
+                if (loose != null) {
+                    for (String name : loose) {
+                        String id = prefix.substring(0, 2) + name;
+                        if (name.startsWith(prefix.substring(2))
+                                && (type == Pack.ANY_TYPE
+                                    || looseType(dir, id) == type)) {
+                            result.add(id);
+                        }
+                    }
+                }
+            }
+            for (Pack pack : packs(dir)) {
+                result.addAll(pack.findByPrefix(prefix, type));
+            }
+        }
+    }
+
+    /** Returns the type of the loose object ID of REPODIR, reading
+     *  only its header. */
+    private static byte looseType(String repoDir, String id) {
+        return typeOfStored(readHeader(looseFile(repoDir, id)));
+    }
+
+    /** Returns the first bytes of FILE, as many as an object header
+     *  has, or none if it cannot be read. */
+    private static byte[] readHeader(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.readNBytes(HEADER_SIZE);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    /** Folds all loose objects of REPODIR, and all of its existing
+     *  packs, into new packs, then deletes the loose copies and the
+     *  old packs.  Each blob that BASES pairs with a base blob is
+     *  packed as a delta against it, if that is much smaller. */
+    static void gc(String repoDir, Map<String, String> bases) {
+        List<Pack> oldPacks = packs(repoDir);
+        List<String> loose = looseIDs(repoDir);
+        if (loose.isEmpty() && oldPacks.size() <= 1 && bases.isEmpty()) {
+            return;
+        }
+        if (loose.isEmpty() && oldPacks.size() == 1
+                && deltasMatch(oldPacks.get(0), bases)) {
+            return;
+        }
+        Pack.Writer writer = null;
+        HashSet<String> written = new HashSet<>();
+        boolean changed = oldPacks.size() > 1;
+        for (Pack pack : oldPacks) {
+            for (String id : pack.ids()) {
+                if (!looseFile(repoDir, id).isFile()) {
+                    byte[] stored = withHeader(pack.read(id));
+                    byte[] form = packedForm(repoDir, id, stored, bases);
+                    changed |= !Arrays.equals(form, stored);
+                    writer = add(repoDir, writer, written, id, form);
+                } else {
+                    changed = true;
+                }
+            }
+        }
+        ArrayList<String> packedLoose = new ArrayList<>();
+        for (String id : loose) {
+            File file = looseFile(repoDir, id);
+            if (file.length() > MAX_PACKED_SIZE) {
+                continue;
+            }
+            writer = add(repoDir, writer, written, id, packedForm(repoDir,
+                    id, withHeader(Utils.readContents(file)), bases));
+            packedLoose.add(id);
+            changed = true;
+        }
+        if (!changed && written.isEmpty()) {
+            if (writer != null) {
+                writer.abort();
+            }
+            return;
+        } else if (writer != null) {
+            written.add(writer.finish());
+        }
+        PACKS.remove(repoDir);
+        for (Pack pack : oldPacks) {
+            if (!written.contains(pack.getName())) {
+                pack.delete();
+            }
+        }
+        for (String id : packedLoose) {
+            File file = looseFile(repoDir, id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+    }
+
+    /** Returns true if the blobs of PACK that BASES pairs with a base
+     *  are all stored as deltas against it, and no other object is a
+     *  delta, so that repacking would write PACK again unchanged. */
+    private static boolean deltasMatch(Pack pack, Map<String, String> bases) {
+        for (String id : pack.ids()) {
+            byte[] stored = withHeader(pack.read(id));
+            String base = bases.get(id);
+            if (stored[3] == DELTA) {
+                String packedBase = Utils.toHex(Arrays.copyOfRange(stored,
+                        HEADER_SIZE, HEADER_SIZE + ID_SIZE));
+                if (!packedBase.equals(base)) {
+                    return false;
+                }
+            } else if (base != null && stored[2] == BLOB) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the form in which to pack object ID of REPODIR, whose
+     *  stored form is STORED: a delta against its base in BASES if
+     *  it has one and that is much smaller, and otherwise the object
+     *  stored whole. */
+    private static byte[] packedForm(String repoDir, String id,
+                                     byte[] stored, Map<String, String> bases) {
+        String base = bases.get(id);
+        byte type = stored[2];
+        if (stored[3] == DELTA) {
+            stored = encode(type, read(repoDir, id));
+        }
+        if (base == null || type != BLOB || !contains(repoDir, base)) {
+            return stored;
+        }
+        byte[] delta = Delta.compute(read(repoDir, base), read(repoDir, id));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[] {MAGIC0, MAGIC1, type, DELTA}, 0,
+                HEADER_SIZE);
+        bytes.writeBytes(Utils.fromHex(base));
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(delta);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (bytes.size() > stored.length * MAX_DELTA_RATIO) {
+            return stored;
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the contents of the object of REPODIR stored as the
+     *  delta STORED, rebuilding its base first.  Bases are kept in
+     *  a cache, so rebuilding the objects of a chain one after the
+     *  other reads each link once. */
+    private static byte[] resolve(String repoDir, byte[] stored) {
+        String baseID = Utils.toHex(Arrays.copyOfRange(stored, HEADER_SIZE,
+                HEADER_SIZE + ID_SIZE));
+        byte[] base = BASE_CACHE.get(baseID);
+        if (base == null) {
+            base = read(repoDir, baseID);
+            BASE_CACHE.put(repoDir, baseID, base);
+        }
+        byte[] delta;
+        try (InflaterInputStream in = new InflaterInputStream(
+                 new ByteArrayInputStream(stored, HEADER_SIZE + ID_SIZE,
+                         stored.length - HEADER_SIZE - ID_SIZE))) {
+            delta = in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return Delta.apply(base, delta);
+    }
+
+    /** Adds object ID with stored form STORED to WRITER, starting
+     *  a new pack in REPODIR if WRITER is null or full, and adding the
+     *  name of each pack finished to WRITTEN. Returns the writer in
+     *  use. */
+    private static Pack.Writer add(String repoDir, Pack.Writer writer,
+                                   Set<String> written, String id,
+                                   byte[] stored) {
+        if (writer != null && writer.size() > MAX_PACK_SIZE) {
+            written.add(writer.finish());
+            writer = null;
+        }
+        if (writer == null) {
+            writer = new Pack.Writer(packDir(repoDir));
+        }
+        writer.add(id, stored[2], stored);
+        return writer;
+    }
+
+    /** Returns the stored form of an object of type TYPE with
+     *  CONTENTS, compressing it if that makes it smaller. */
+    static byte[] encode(byte type, byte[] contents) {
+        byte[] header = {MAGIC0, MAGIC1, type, STORED};
+        if (contents.length >= MIN_DEFLATE_SIZE) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(header, 0, HEADER_SIZE);
+            try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(bytes)) {
+                out.write(contents);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            if (bytes.size() < contents.length + HEADER_SIZE) {
+                byte[] result = bytes.toByteArray();
+                result[3] = DEFLATED;
+                return result;
+            }
+        }
+        byte[] result = new byte[contents.length + HEADER_SIZE];
+        System.arraycopy(header, 0, result, 0, HEADER_SIZE);
+        System.arraycopy(contents, 0, result, HEADER_SIZE, contents.length);
+        return result;
+    }
+
+    /** Returns the contents of the object with stored form STORED,
+     *  which must not be a delta. */
+    static byte[] decode(byte[] stored) {
+        if (!hasHeader(stored)) {
+            return stored;
+        } else if (stored[3] == DELTA) {
+            throw new IllegalArgumentException("delta without its base");
+        }
+        if (stored[3] == DEFLATED) {
+            try (InflaterInputStream in = new InflaterInputStream(
+                     new ByteArrayInputStream(stored, HEADER_SIZE,
+                             stored.length - HEADER_SIZE))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        return Arrays.copyOfRange(stored, HEADER_SIZE, stored.length);
+    }
+
+    /** Returns true if STORED starts with an object header. */
+    private static boolean hasHeader(byte[] stored) {
+        return stored.length >= HEADER_SIZE && stored[0] == MAGIC0
+                && stored[1] == MAGIC1;
+    }
+
+    /** Returns STORED, adding a header (and compressing it) if it
+     *  is an object written by an earlier version of gitlet.  A delta
+     *  is left as it is. */
+    private static byte[] withHeader(byte[] stored) {
+        if (hasHeader(stored)) {
+            return stored;
+        }
+        return encode(typeOf(stored), stored);
+    }
+
+    /** Returns the type tag of the object with stored form STORED. */
+    private static byte typeOfStored(byte[] stored) {
+        return hasHeader(stored) ? stored[2] : typeOf(stored);
+    }
+
+    /** Returns the type tag of a headerless object with CONTENTS,
+     *  telling serialized commits from blobs. */
+    private static byte typeOf(byte[] contents) {
+        return Utils.isSerialized(contents) ? COMMIT : BLOB;
+    }
+
+    /** Returns the IDs of all loose objects of REPODIR. */
+    private static List<String> looseIDs(String repoDir) {
+        ArrayList<String> result = new ArrayList<>();
+        File[] dirs = new File(repoDir + "//objects").listFiles();
+        if (dirs == null) {
+            return result;
+        }
+        for (File dir : dirs) {
+            if (!dir.isDirectory() || dir.getName().length() != 2) {
+                continue;
+            }
+            for (String name : Utils.plainFilenamesIn(dir)) {
+                result.add(dir.getName() + name);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the packs of REPODIR, opening them on first use. */
+    private static List<Pack> packs(String repoDir) {
+        List<Pack> result = PACKS.get(repoDir);
+        if (result == null) {
+            result = listPacks(repoDir, List.of());
+            PACKS.put(repoDir, result);
+        }
+        return result;
+    }
+
+    /** Returns the packs now in REPODIR, reusing those of OPEN that
+     *  are still there rather than opening them again. */
+    private static List<Pack> listPacks(String repoDir, List<Pack> open) {
+        File dir = packDir(repoDir);
+        READ_TIMES.put(dir.getPath(), dir.lastModified());
+        HashMap<String, Pack> opened = new HashMap<>();
+        for (Pack pack : open) {
+            opened.put(pack.getName(), pack);
+        }
+        List<Pack> packs = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return packs;
+        }
+        for (String name : names) {
+            if (!name.endsWith(".pack")) {
+                continue;
+            }
+            String base = name.substring(0, name.length() - 5);
+            Pack pack = opened.get(base);
+            try {
+                packs.add(pack != null ? pack : new Pack(dir, base));
+            } catch (IOException e) {
+                if (new File(dir, name).exists()) {
+                    throw Utils.error("Corrupt pack %s.", name);
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the alternates file of REPODIR. */
+    private static File alternatesFile(String repoDir) {
+        return new File(repoDir + "//objects//info//alternates");
+    }
+
+    /** Returns the pack directory of REPODIR. */
+    private static File packDir(String repoDir) {
+        return new File(repoDir + "//objects//pack");
+    }
+
+    /** Returns the loose file of object ID in REPODIR. */
+    private static File looseFile(String repoDir, String id) {
+        return new File(repoDir + "//objects//" + id.substring(0, 2)
+                + "//" + id.substring(2));
+    }
+
+    /** Map pairing repository directories with themselves followed
+     *  by their alternates. */
+    private static final ConcurrentHashMap<String, List<String>>
+        ALTERNATES = new ConcurrentHashMap<>();
+
+    /** Map pairing repository directories with their open packs. */
+    private static final ConcurrentHashMap<String, List<Pack>> PACKS =
+        new ConcurrentHashMap<>();
+
+    /** Map pairing the paths of the pack directories and alternates
+     *  files read with their modification time when they were. */
+    private static final ConcurrentHashMap<String, Long> READ_TIMES =
+        new ConcurrentHashMap<>();
+
+    /** Class answering batched queries about which objects a
+     *  repository has, without a file access per object: each loose
+     *  object directory is listed at most once, and other objects
+     *  are looked up in the pack indices.  Answers reflect the loose
+     *  objects present when their directory was first listed.
+     *  Objects found only in alternates count as present, except for
+     *  commits, so that a transfer still records them in the commit
+     *  log of the repository, without copying them. */
+    static class Inventory {
+
+        /** An inventory of the repository with .gitlet directory
+         *  REPODIR. */
+        Inventory(String repoDir) {
+            dir = repoDir;
+            loose = new HashMap<>();
+            refresh(repoDir);
+        }
+
+        /** Returns those of IDS that the repository has. */
+        Set<String> present(Collection<String> ids) {
+            HashSet<String> result = new HashSet<>();
+            for (String id : ids) {
+                Set<String> names = loose.computeIfAbsent(
+                        id.substring(0, 2), this::list);
+                if (names.contains(id.substring(2))) {
+                    result.add(id);
+                    continue;
+                }
+                boolean found = false;
+                for (Pack pack : packs(dir)) {
+                    if (pack.contains(id)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (found || inAlternates(id)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        /** Returns true if object ID, which is not a commit, is in one
+         *  of the alternates of the repository. */
+        private boolean inAlternates(String id) {
+            List<String> stores = stores(dir);
+            for (String other : stores.subList(1, stores.size())) {
+                if (looseFile(other, id).isFile()) {
+                    return looseType(other, id) != COMMIT;
+                }
+                byte[] stored = readOwn(other, id);
+                if (stored != null) {
+                    return typeOfStored(stored) != COMMIT;
+                }
+            }
+            return false;
+        }
+
+        /** Returns the names of the loose objects of the directory
+         *  for IDs starting with PREFIX. */
+        private Set<String> list(String prefix) {
+            List<String> names = Utils.plainFilenamesIn(dir + "//objects//"
+                    + prefix);
+            return names == null ? new HashSet<>() : new HashSet<>(names);
+        }
+
+        /** The .gitlet directory of the repository. */
+        private final String dir;
+        /** Loose object names by directory, listed on first use. */
+        private final HashMap<String, Set<String>> loose;
+    }
+
+    /** Cache of the contents of delta bases, least recently used
+     *  first, bounded by core.deltaBaseCacheSize bytes. */
+    private static final BaseCache BASE_CACHE = new BaseCache();
+
+    /** Class representing a cache of delta bases, evicting the least
+     *  recently used ones once their total size exceeds its limit. */
+    private static class BaseCache {
+
+        /** Returns the cached contents of object ID, or null. */
+        synchronized byte[] get(String id) {
+            return entries.get(id);
+        }
+
+        /** Caches CONTENTS as the contents of object ID, read from
+         *  REPODIR.  The cache is shared by all repositories, since an
+         *  ID names the same contents in each; its limit is that of
+         *  the first to use it. */
+        synchronized void put(String repoDir, String id, byte[] contents) {
+            if (limit < 0) {
+                limit = Config.getInt(repoDir, "core.deltaBaseCacheSize",
+                        DEFAULT_BASE_CACHE_SIZE);
+            }
+            if (contents.length > limit || entries.containsKey(id)) {
+                return;
+            }
+            entries.put(id, contents);
+            size += contents.length;
+            Iterator<byte[]> eldest = entries.values().iterator();
+            while (size > limit) {
+                size -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+
+        /** Cached contents by ID, in access order. */
+        private final LinkedHashMap<String, byte[]> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+        /** Total size of the cached contents. */
+        private long size;
+        /** Maximum total size, or -1 until it has been read. */
+        private long limit = -1;
+    }
+}
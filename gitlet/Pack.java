@@ -0,0 +1,330 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/** Class representing a pack: an append-only file of objects,
+ *  pack-NAME.pack, together with a sorted index of their IDs and
+ *  offsets, pack-NAME.idx. Both are memory-mapped when opened.
+ *
+ *  The pack file holds a header (magic, version, object count)
+ *  followed by one entry per object: a type byte, the length of the
+ *  contents as a long, and the contents.  The index holds the same
+ *  header followed by one record per object, sorted by ID: the
+ *  20-byte raw ID, the type byte and the offset of its entry in the
+ *  pack, so that IDs can be resolved by prefix and type without
+ *  touching the pack.  Indices of version 1 lack the type byte.
+ *
+ *  A pack is named by the hash of its bytes, so a pack is never
+ *  replaced by different contents under the same name.  Its index is
+ *  written first and the pack moved into place last; readers only
+ *  look for packs by their .pack file, so they never see a pack
+ *  without its index.
+ *  @author Chris Sreesangkom
+ */
+class Pack {
+
+    /** Magic number starting every pack file. */
+    private static final int PACK_MAGIC = 0x47504b31;
+    /** Magic number starting every index file. */
+    private static final int IDX_MAGIC = 0x47494431;
+    /** Version of the pack format. */
+    private static final int VERSION = 1;
+    /** Version of the index format. */
+    private static final int IDX_VERSION = 2;
+    /** Size of the header of pack and index files. */
+    private static final int HEADER_SIZE = 12;
+    /** Size of a raw object ID. */
+    private static final int ID_SIZE = 20;
+    /** Size of one record of an index of version 1. */
+    private static final int V1_RECORD_SIZE = ID_SIZE + 8;
+    /** Size of one record of the index. */
+    private static final int RECORD_SIZE = ID_SIZE + 1 + 8;
+    /** Type matching objects of any type in findByPrefix. */
+    static final byte ANY_TYPE = 0;
+
+    /** Opens the pack named NAME in directory DIR. */
+    Pack(File dir, String name) throws IOException {
+        packFile = new File(dir, name + ".pack");
+        idxFile = new File(dir, name + ".idx");
+        pack = map(packFile);
+        idx = map(idxFile);
+        if (pack.getInt(0) != PACK_MAGIC || idx.getInt(0) != IDX_MAGIC
+                || idx.getInt(4) < 1 || idx.getInt(4) > IDX_VERSION) {
+            throw new IOException("bad pack header");
+        }
+        typed = idx.getInt(4) >= 2;
+        recordSize = typed ? RECORD_SIZE : V1_RECORD_SIZE;
+        count = idx.getInt(8);
+    }
+
+    /** Returns a read-only mapping of FILE. */
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+    }
+
+    /** Returns the contents of object ID, or null if it is not in
+     *  this pack. */
+    byte[] read(String id) {
+        int index = find(Utils.fromHex(id));
+        if (index < 0) {
+            return null;
+        }
+        int offset = offsetAt(index);
+        int length = (int) pack.getLong(offset + 1);
+        byte[] contents = new byte[length];
+        pack.duplicate().position(offset + 9).get(contents);
+        return contents;
+    }
+
+    /** Returns true if object ID is in this pack. */
+    boolean contains(String id) {
+        return find(Utils.fromHex(id)) >= 0;
+    }
+
+    /** Returns the IDs of all objects in this pack, in order. */
+    List<String> ids() {
+        ArrayList<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            result.add(idAt(i));
+        }
+        return result;
+    }
+
+    /** Returns the IDs of the objects of type TYPE, or of any type if
+     *  TYPE is ANY_TYPE, in this pack starting with PREFIX, in
+     *  order.  The first match is found by binary search. */
+    List<String> findByPrefix(String prefix, byte type) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = lo; i < count && idAt(i).startsWith(prefix); i += 1) {
+            if (type == ANY_TYPE || typeAt(i) == type) {
+                result.add(idAt(i));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the name of this pack. */
+    String getName() {
+        String name = packFile.getName();
+        return name.substring(0, name.length() - ".pack".length());
+    }
+
+    /** Deletes the files of this pack, the pack first, so that
+     *  readers never find it without its index. */
+    void delete() {
+        packFile.delete();
+        idxFile.delete();
+    }
+
+    /** Returns the index of the record with raw ID RAW, or -1. */
+    private int find(byte[] raw) {
+        byte[] probe = new byte[ID_SIZE];
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idx.duplicate().position(HEADER_SIZE + mid * recordSize)
+                .get(probe);
+            int cmp = Arrays.compareUnsigned(probe, raw);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the ID of the I-th record of the index. */
+    private String idAt(int i) {
+        byte[] raw = new byte[ID_SIZE];
+        idx.duplicate().position(HEADER_SIZE + i * recordSize).get(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the type of the object of the I-th record of the
+     *  index, read from the pack entry if the index lacks it. */
+    private byte typeAt(int i) {
+        if (typed) {
+            return idx.get(HEADER_SIZE + i * recordSize + ID_SIZE);
+        }
+        return pack.get(offsetAt(i));
+    }
+
+    /** Returns the offset in the pack of the object of the I-th
+     *  record of the index. */
+    private int offsetAt(int i) {
+        return (int) idx.getLong(HEADER_SIZE + (i + 1) * recordSize - 8);
+    }
+
+    /** Class writing a new pack. */
+    static class Writer {
+
+        /** Starts a new pack in directory DIR. */
+        Writer(File dir) {
+            directory = dir;
+            directory.mkdir();
+            digest = Utils.sha1Digest();
+            try {
+                tmpFile = File.createTempFile("tmp-pack", null, dir);
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new DigestOutputStream(
+                            new FileOutputStream(tmpFile), digest)));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+            } catch (IOException e) {
+                throw Utils.error("Pack creation unsuccessful.");
+            }
+            ids = new ArrayList<>();
+            types = new ArrayList<>();
+            offsets = new ArrayList<>();
+            seen = new HashSet<>();
+        }
+
+        /** Appends object ID of type TYPE with CONTENTS. */
+        void add(String id, byte type, byte[] contents) {
+            if (!seen.add(id)) {
+                return;
+            }
+            try {
+                ids.add(id);
+                types.add(type);
+                offsets.add((long) out.size());
+                out.writeByte(type);
+                out.writeLong(contents.length);
+                out.write(contents);
+            } catch (IOException e) {
+                throw Utils.error("Pack creation unsuccessful.");
+            }
+        }
+
+        /** Returns the number of bytes written so far. */
+        long size() {
+            return out.size();
+        }
+
+        /** Writes the index and moves the pack into place.  If a pack
+         *  with the same bytes is there already, it is kept and this
+         *  one dropped.  Returns its name. */
+        String finish() {
+            try {
+                out.close();
+                Integer[] order = new Integer[ids.size()];
+                for (int i = 0; i < order.length; i += 1) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+                digest.update(ByteBuffer.allocate(4).putInt(ids.size())
+                        .array());
+                String name = "pack-" + Utils.toHex(digest.digest());
+                File packFile = new File(directory, name + ".pack");
+                if (packFile.exists()) {
+                    tmpFile.delete();
+                    return name;
+                }
+
+                try (RandomAccessFile raf =
+                         new RandomAccessFile(tmpFile, "rw")) {
+                    raf.seek(8);
+                    raf.writeInt(ids.size());
+                    raf.getFD().sync();
+                }
+
+                File tmpIdx = File.createTempFile("tmp-idx", null, directory);
+                ByteBuffer idxBytes = ByteBuffer.allocate(HEADER_SIZE
+                        + ids.size() * RECORD_SIZE);
+                idxBytes.putInt(IDX_MAGIC).putInt(IDX_VERSION)
+                    .putInt(ids.size());
+                for (int i : order) {
+                    idxBytes.put(Utils.fromHex(ids.get(i)));
+                    idxBytes.put(types.get(i));
+                    idxBytes.putLong(offsets.get(i));
+                }
+                try (FileOutputStream idxOut = new FileOutputStream(tmpIdx)) {
+                    idxOut.write(idxBytes.array());
+                    idxOut.getFD().sync();
+                }
+                if (!tmpIdx.renameTo(new File(directory, name + ".idx"))
+                        || !tmpFile.renameTo(packFile)) {
+                    throw new IOException("rename failed");
+                }
+                return name;
+            } catch (IOException e) {
+                throw Utils.error("Pack creation unsuccessful.");
+            }
+        }
+
+        /** Drops the pack being written. */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                /* Deleted anyway. */
+            }
+            tmpFile.delete();
+        }
+
+        /** Directory the pack is written to. */
+        private File directory;
+        /** Temporary file holding the pack while it is written. */
+        private File tmpFile;
+        /** Stream writing the pack. */
+        private DataOutputStream out;
+        /** Hash of the bytes written, naming the pack. */
+        private MessageDigest digest;
+        /** IDs of the objects written, in order. */
+        private ArrayList<String> ids;
+        /** Types of the objects written, in order. */
+        private ArrayList<Byte> types;
+        /** Offsets of the objects written, in order. */
+        private ArrayList<Long> offsets;
+        /** IDs of the objects written. */
+        private HashSet<String> seen;
+    }
+
+    /** The pack file. */
+    private File packFile;
+    /** The index file. */
+    private File idxFile;
+    /** Mapping of the pack file. */
+    private MappedByteBuffer pack;
+    /** Mapping of the index file. */
+    private MappedByteBuffer idx;
+    /** Number of objects in the pack. */
+    private int count;
+    /** True if the index records the type of each object. */
+    private boolean typed;
+    /** Size of one record of the index. */
+    private int recordSize;
+}
@@ -0,0 +1,213 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Class holding the wire protocol spoken between gitlet serve and
+ *  its clients over a connection.  Every message is a word written
+ *  with writeUTF, followed by its arguments.
+ *
+ *  A client sends requests: REFS, answered by the number of branches
+ *  and a name and commit ID for each; RECEIVE, after which the client
+ *  sends a transfer; SEND and a commit ID, after which the server
+ *  sends that commit as a transfer; UPDATE, a branch, its expected
+ *  head (empty if it must not exist) and its new head, answered by OK
+ *  or ERROR and a message; and QUIT.
+ *
+ *  A transfer is a stream of HAVE and a list of IDs, answered by OK
+ *  and one boolean per ID telling whether the receiver has it, or by
+ *  ERROR and a message if the receiver failed, OBJECT, an ID
+ *  and the stored form of the object, and COMMIT and an ID, ended by
+ *  DONE, answered by OK, or by ERROR and a message.  Only HAVE waits
+ *  for an answer, so objects are streamed without round trips, and
+ *  the walk asks about whole batches of objects at a time.  Objects
+ *  are read in pieces, so a peer claiming a large object cannot make
+ *  the reader allocate more than it actually sends.
+ *  @author Chris Sreesangkom
+ */
+class Protocol {
+
+    /** Request for the branches of the server. */
+    static final String REFS = "refs";
+    /** Request to send a transfer to the server. */
+    static final String RECEIVE = "receive";
+    /** Request for a transfer from the server. */
+    static final String SEND = "send";
+    /** Request to update a branch of the server. */
+    static final String UPDATE = "update";
+    /** Request ending the connection. */
+    static final String QUIT = "quit";
+    /** Query for the objects the receiver has. */
+    static final String HAVE = "have";
+    /** Object being transferred. */
+    static final String OBJECT = "object";
+    /** Commit whose objects have all been transferred. */
+    static final String COMMIT = "commit";
+    /** End of a transfer. */
+    static final String DONE = "done";
+    /** Success. */
+    static final String OK = "ok";
+    /** Failure, followed by its message. */
+    static final String ERROR = "error";
+    /** Largest stored form of an object accepted, in bytes. */
+    static final int MAX_OBJECT_SIZE = 1 << 30;
+
+    /** Reads a transfer from IN into RECEIVER, answering on OUT. */
+    static void receive(DataInputStream in, DataOutputStream out,
+                        Transfer.Receiver receiver) throws IOException {
+        while (true) {
+            String message = in.readUTF();
+            switch (message) {
+            case HAVE:
+                List<String> ids = readIDs(in);
+                Set<String> present = receiver.present(ids);
+                out.writeUTF(OK);
+                for (String id : ids) {
+                    out.writeBoolean(present.contains(id));
+                }
+                out.flush();
+                break;
+            case OBJECT:
+                String id = readID(in);
+                int length = in.readInt();
+                if (length < 0 || length > MAX_OBJECT_SIZE) {
+                    throw Utils.error("Protocol error.");
+                }
+                byte[] stored = in.readNBytes(length);
+                if (stored.length != length) {
+                    throw new EOFException();
+                }
+                receiver.write(id, stored);
+                break;
+            case COMMIT:
+                receiver.addCommit(readID(in));
+                break;
+            case DONE:
+                receiver.finish();
+                out.writeUTF(OK);
+                out.flush();
+                return;
+            case ERROR:
+                throw Utils.error(in.readUTF());
+            default:
+                throw Utils.error("Protocol error.");
+            }
+        }
+    }
+
+    /** Reads the answer to a request from IN, throwing the error it
+     *  reports, if any. */
+    static void readStatus(DataInputStream in) throws IOException {
+        String status = in.readUTF();
+        if (status.equals(ERROR)) {
+            throw Utils.error(in.readUTF());
+        } else if (!status.equals(OK)) {
+            throw Utils.error("Protocol error.");
+        }
+    }
+
+    /** Reads an object ID from IN, rejecting anything else, so that
+     *  it can safely name a file. */
+    static String readID(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        if (!id.matches("[0-9a-f]{40}")) {
+            throw Utils.error("Protocol error.");
+        }
+        return id;
+    }
+
+    /** Reads a count and that many object IDs from IN. */
+    private static List<String> readIDs(DataInputStream in)
+        throws IOException {
+        int n = in.readInt();
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(readID(in));
+        }
+        return result;
+    }
+
+    /** Class representing the receiving end of a transfer at the
+     *  other end of a connection. */
+    static class Peer implements Transfer.Receiver {
+
+        /** A receiver reading its answers from IN and sending the
+         *  transfer to OUT. */
+        Peer(DataInputStream in, DataOutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public synchronized Set<String> present(Collection<String> ids) {
+            HashSet<String> result = new HashSet<>();
+            try {
+                out.writeUTF(HAVE);
+                out.writeInt(ids.size());
+                for (String id : ids) {
+                    out.writeUTF(id);
+                }
+                out.flush();
+                readStatus(in);
+                for (String id : ids) {
+                    if (in.readBoolean()) {
+                        result.add(id);
+                    }
+                }
+            } catch (IOException e) {
+                throw Utils.error("Transfer unsuccessful.");
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void write(String id, byte[] stored) {
+            try {
+                out.writeUTF(OBJECT);
+                out.writeUTF(id);
+                out.writeInt(stored.length);
+                out.write(stored);
+            } catch (IOException e) {
+                throw Utils.error("Transfer unsuccessful.");
+            }
+        }
+
+        @Override
+        public boolean link(String repoDir, String id) {
+            return false;
+        }
+
+        @Override
+        public synchronized void addCommit(String id) {
+            try {
+                out.writeUTF(COMMIT);
+                out.writeUTF(id);
+            } catch (IOException e) {
+                throw Utils.error("Transfer unsuccessful.");
+            }
+        }
+
+        @Override
+        public synchronized void finish() {
+            try {
+                out.writeUTF(DONE);
+                out.flush();
+                readStatus(in);
+            } catch (IOException e) {
+                throw Utils.error("Transfer unsuccessful.");
+            }
+        }
+
+        /** Stream from the other end. */
+        private final DataInputStream in;
+        /** Stream to the other end. */
+        private final DataOutputStream out;
+    }
+}
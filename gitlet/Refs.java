@@ -0,0 +1,346 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Class giving access to the refs of a repository: its branches,
+ *  named heads/BRANCH, and its remote-tracking branches, named
+ *  remotes/REMOTE/BRANCH.
+ *
+ *  A ref is either loose, a file refs/NAME holding its commit ID, or
+ *  packed, a line of packed-refs; a loose ref overrides a packed one
+ *  of the same name.  packed-refs starts with a header line, followed
+ *  by one line per ref, sorted by name: the commit ID, a space and
+ *  the name.  It is memory-mapped, and a ref is found in it by binary
+ *  search over the lines.  gc packs all refs, so that repositories
+ *  with many branches list and resolve them without a file per ref.
+ *
+ *  Every change to a ref first creates NAME.lock next to it, which
+ *  fails if someone else holds the lock, writes the new value there
+ *  and renames it into place, so that updates are atomic and can be
+ *  made conditional on the current value.  packed-refs is rewritten
+ *  the same way.  Packing and deleting refs hold the lock of
+ *  packed-refs throughout, so that a ref deleted while the loose refs
+ *  are being packed cannot be written back to packed-refs.
+ *  @author Chris Sreesangkom
+ */
+class Refs {
+
+    /** First line of packed-refs. */
+    private static final String PACKED_HEADER = "# gitlet packed-refs 1\n";
+    /** Suffix of lock files. */
+    private static final String LOCK = ".lock";
+    /** Length of a commit ID. */
+    private static final int ID_LENGTH = 40;
+
+    /** Returns the commit ID of ref NAME of the repository with .gitlet
+     *  directory REPODIR, or null if there is no such ref. */
+    static String get(String repoDir, String name) {
+        File loose = looseFile(repoDir, name);
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose).trim();
+        }
+        return findPacked(packed(repoDir), name);
+    }
+
+    /** Sets ref NAME of REPODIR to ID. */
+    static void set(String repoDir, String name, String id) {
+        File lock = lock(looseFile(repoDir, name));
+        commit(lock, looseFile(repoDir, name), id);
+    }
+
+    /** Sets ref NAME of REPODIR to NEWID provided that it is still
+     *  OLDID, or does not exist if OLDID is null.  Returns false,
+     *  leaving the ref alone, otherwise. */
+    static boolean update(String repoDir, String name, String oldID,
+                          String newID) {
+        File loose = looseFile(repoDir, name);
+        File lock = lock(loose);
+        String current = get(repoDir, name);
+        if (current == null ? oldID != null : !current.equals(oldID)) {
+            lock.delete();
+            return false;
+        }
+        commit(lock, loose, newID);
+        return true;
+    }
+
+    /** Deletes ref NAME of REPODIR, if it exists. */
+    static void delete(String repoDir, String name) {
+        File packedLock = lock(packedFile(repoDir));
+        boolean released = false;
+        try {
+            File loose = looseFile(repoDir, name);
+            File lock = lock(loose);
+            try {
+                if (findPacked(packed(repoDir), name) != null) {
+                    TreeMap<String, String> refs = new TreeMap<>();
+                    readPacked(packed(repoDir), "", refs);
+                    refs.remove(name);
+                    released = true;
+                    writePacked(repoDir, packedLock, refs);
+                }
+                loose.delete();
+            } finally {
+                lock.delete();
+            }
+        } finally {
+            if (!released) {
+                packedLock.delete();
+            }
+        }
+    }
+
+    /** Returns a map pairing the names of the refs of REPODIR starting
+     *  with PREFIX, with PREFIX removed, with their commit IDs, in
+     *  order. */
+    static TreeMap<String, String> list(String repoDir, String prefix) {
+        TreeMap<String, String> all = new TreeMap<>();
+        readPacked(packed(repoDir), prefix, all);
+        readLoose(new File(repoDir + "//refs"), "", prefix, all);
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> ref : all.entrySet()) {
+            result.put(ref.getKey().substring(prefix.length()),
+                    ref.getValue());
+        }
+        return result;
+    }
+
+    /** Moves all loose refs of REPODIR into packed-refs.  A loose ref
+     *  changed while they are packed is left in place. */
+    static void pack(String repoDir) {
+        File packedLock = lock(packedFile(repoDir));
+        TreeMap<String, String> loose = new TreeMap<>();
+        boolean released = false;
+        try {
+            readLoose(new File(repoDir + "//refs"), "", "", loose);
+            if (loose.isEmpty()) {
+                return;
+            }
+            TreeMap<String, String> refs = new TreeMap<>();
+            readPacked(packed(repoDir), "", refs);
+            refs.putAll(loose);
+            released = true;
+            writePacked(repoDir, packedLock, refs);
+        } finally {
+            if (!released) {
+                packedLock.delete();
+            }
+        }
+        for (Map.Entry<String, String> ref : loose.entrySet()) {
+            File file = looseFile(repoDir, ref.getKey());
+            File lock;
+            try {
+                lock = lock(file);
+            } catch (GitletException e) {
+                continue;
+            }
+            if (file.isFile() && Utils.readContentsAsString(file).trim()
+                    .equals(ref.getValue())) {
+                file.delete();
+            }
+            lock.delete();
+        }
+    }
+
+    /** Returns the loose file of ref NAME of REPODIR. */
+    private static File looseFile(String repoDir, String name) {
+        return new File(repoDir + "//refs//" + name.replace("/", "//"));
+    }
+
+    /** Takes the lock of FILE, returning the lock file. */
+    private static File lock(File file) {
+        File lock = new File(file.getPath() + LOCK);
+        lock.getParentFile().mkdirs();
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException e) {
+            throw Utils.error("Unable to lock %s; remove %s if no other "
+                    + "gitlet command is running.", file.getName(),
+                    lock.getPath());
+        } catch (IOException e) {
+            throw Utils.error("Unable to lock %s.", file.getName());
+        }
+        return lock;
+    }
+
+    /** Writes CONTENTS to LOCK, then renames it to FILE, releasing
+     *  the lock. */
+    private static void commit(File lock, File file, String contents) {
+        try {
+            Files.writeString(lock.toPath(), contents);
+            Files.move(lock.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            lock.delete();
+            throw Utils.error("Ref update unsuccessful.");
+        }
+    }
+
+    /** Adds the loose refs under DIR, whose names start with PREFIX
+     *  once prefixed with PATH, to REFS. */
+    private static void readLoose(File dir, String path, String prefix,
+                                  Map<String, String> refs) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = path + file.getName();
+            if (file.isDirectory()) {
+                if (prefix.startsWith(name + "/")
+                        || (name + "/").startsWith(prefix)) {
+                    readLoose(file, name + "/", prefix, refs);
+                }
+            } else if (name.startsWith(prefix) && !name.endsWith(LOCK)) {
+                String id = Utils.readContentsAsString(file).trim();
+                if (!id.isEmpty()) {
+                    refs.put(name, id);
+                }
+            }
+        }
+    }
+
+    /** Writes REFS, pairing names with IDs, as the packed refs of
+     *  REPODIR, whose lock LOCK is held, releasing it. */
+    private static void writePacked(String repoDir, File lock,
+                                    Map<String, String> refs) {
+        StringBuilder contents = new StringBuilder(PACKED_HEADER);
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            contents.append(ref.getValue()).append(' ')
+                .append(ref.getKey()).append('\n');
+        }
+        commit(lock, packedFile(repoDir), contents.toString());
+    }
+
+    /** Returns the packed-refs file of REPODIR. */
+    private static File packedFile(String repoDir) {
+        return new File(repoDir + "//packed-refs");
+    }
+
+    /** Returns a mapping of the packed refs of REPODIR, without the
+     *  header, or an empty buffer if there are none. */
+    private static ByteBuffer packed(String repoDir) {
+        File file = packedFile(repoDir);
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer all = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            int start = PACKED_HEADER.length();
+            byte[] header = new byte[Math.min(start, all.limit())];
+            all.get(0, header);
+            if (!new String(header, StandardCharsets.UTF_8)
+                    .equals(PACKED_HEADER)) {
+                throw Utils.error("Corrupt packed-refs.");
+            }
+            return all.position(start).slice();
+        } catch (IOException e) {
+            throw Utils.error("Corrupt packed-refs.");
+        }
+    }
+
+    /** Returns the ID of ref NAME in the packed refs LINES, or null.
+     *  Since the lines are sorted, they are binary searched: LO and
+     *  HI always are line starts, and the line around their middle
+     *  is compared with NAME. */
+    private static String findPacked(ByteBuffer lines, String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = lines.limit();
+        while (lo < hi) {
+            int mid = lineStart(lines, (lo + hi) >>> 1, lo);
+            int end = lineEnd(lines, mid);
+            int cmp = compareName(lines, mid, end, key);
+            if (cmp == 0) {
+                return idAt(lines, mid);
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return null;
+    }
+
+    /** Adds the refs in the packed refs LINES whose names start with
+     *  PREFIX to REFS, finding the first by binary search. */
+    private static void readPacked(ByteBuffer lines, String prefix,
+                                   Map<String, String> refs) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = lines.limit();
+        while (lo < hi) {
+            int mid = lineStart(lines, (lo + hi) >>> 1, lo);
+            int end = lineEnd(lines, mid);
+            if (compareName(lines, mid, end, key) < 0) {
+                lo = end + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int start = lo; start < lines.limit();) {
+            int end = lineEnd(lines, start);
+            byte[] name = new byte[end - start - ID_LENGTH - 1];
+            lines.get(start + ID_LENGTH + 1, name);
+            String text = new String(name, StandardCharsets.UTF_8);
+            if (!text.startsWith(prefix)) {
+                break;
+            }
+            refs.put(text, idAt(lines, start));
+            start = end + 1;
+        }
+    }
+
+    /** Returns the start of the line of LINES containing POS, which
+     *  is no earlier than LO, a line start. */
+    private static int lineStart(ByteBuffer lines, int pos, int lo) {
+        while (pos > lo && lines.get(pos - 1) != '\n') {
+            pos -= 1;
+        }
+        return pos;
+    }
+
+    /** Returns the position of the newline ending the line of LINES
+     *  starting at START. */
+    private static int lineEnd(ByteBuffer lines, int start) {
+        int pos = start;
+        while (pos < lines.limit() && lines.get(pos) != '\n') {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Compares the name in the line of LINES from START to END with
+     *  KEY, bytewise. */
+    private static int compareName(ByteBuffer lines, int start, int end,
+                                   byte[] key) {
+        int from = start + ID_LENGTH + 1;
+        for (int i = 0; i < key.length && from + i < end; i += 1) {
+            int cmp = Byte.compareUnsigned(lines.get(from + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(end - from, key.length);
+    }
+
+    /** Returns the ID in the line of LINES starting at START. */
+    private static String idAt(ByteBuffer lines, int start) {
+        byte[] id = new byte[ID_LENGTH];
+        lines.get(start, id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+}
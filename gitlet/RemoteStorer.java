@@ -1,13 +1,28 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 /** Class the stores all the remotes in
  *  a set.
+ *
+ *  The remotes file holds a header of a magic number and a format
+ *  version, the number of remotes, and the length-prefixed name and
+ *  directory of each.  Remotes files written by earlier versions of
+ *  gitlet are Java-serialized; they are still read.
  *  @author Chris Sreesangkom */
 class RemoteStorer implements Serializable {
 
+    /** Magic number starting encoded remotes. */
+    private static final int MAGIC = 0x4752454d;
+    /** Version of the remotes format. */
+    private static final int VERSION = 1;
+
     /** Constructs an empty remote set. */
     RemoteStorer() {
         remoteMap = new HashMap<>();
@@ -36,9 +51,53 @@ class RemoteStorer implements Serializable {
         return remoteMap.get(name);
     }
 
+    /** Returns the encoding of the remotes. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(remoteMap.size());
+            for (Remote remote : remoteMap.values()) {
+                Utils.writeString(out, remote.getName());
+                Utils.writeString(out, remote.getDirectory());
+            }
+        } catch (IOException e) {
+            throw Utils.error("Internal error serializing remotes.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the remotes encoded as BYTES, in the current format or
+     *  Java serialization.  Throws IllegalArgumentException if BYTES
+     *  are not remotes. */
+    static RemoteStorer decode(byte[] bytes) {
+        if (Utils.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, RemoteStorer.class);
+        }
+        RemoteStorer result = new RemoteStorer();
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("not remotes");
+            }
+            for (int n = in.getInt(); n > 0; n -= 1) {
+                String name = Utils.readString(in);
+                result.add(name, Utils.readString(in));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated remotes");
+        }
+        return result;
+    }
+
 
     /** A set which stores all the remotes for the
      *  repository. */
     private HashMap<String, Remote> remoteMap;
 
+    /** Serialization version, fixed so that remotes written by
+     *  earlier versions of gitlet can still be read. */
+    private static final long serialVersionUID = -2452346170991608516L;
+
 }
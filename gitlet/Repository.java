@@ -0,0 +1,1211 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/** Class representing a repository: a working directory and its
+ *  .gitlet directory, on which the commands of gitlet operate.
+ *  @author Chris Sreesagkom
+ */
+public class Repository implements Closeable {
+
+    /** Path of the refs directory as written in HEAD, which is
+     *  relative to the working directory. */
+    private static final String REFS_DIR = ".gitlet//refs";
+    /** Length of object ID. */
+    private static final int ID_LENGTH = 40;
+    /** Default maximum length of a chain of deltas. */
+    private static final int DEFAULT_DELTA_DEPTH = 10;
+
+    /** A repository whose working directory is WORKDIR.  Its .gitlet
+     *  directory is WORKDIR/.gitlet, which init creates; other
+     *  operations require that it exists.  The repository keeps the
+     *  stage, the remotes and the index in memory until it is saved
+     *  or closed. */
+    public Repository(File workDir) {
+        this.workDir = workDir;
+        gitletDir = workDir.toPath().resolve(".gitlet").normalize()
+                .toString();
+    }
+
+    /** Returns the repository whose working directory is WORKDIR,
+     *  which must hold an initialized Gitlet directory in the current
+     *  format. */
+    public static Repository open(File workDir) {
+        Repository repository = new Repository(workDir);
+        if (!new File(repository.gitletDir).isDirectory()) {
+            throw new GitletException.NotFound(
+                    "Not in an initialized Gitlet directory.");
+        }
+        repository.checkFormat();
+        return repository;
+    }
+
+    /** Throws a GitletException if the repository was written by an
+     *  earlier version of gitlet, whose blob IDs depend on file paths,
+     *  and so must be migrated before other commands can compare its
+     *  files.  Does nothing if there is no repository yet. */
+    public void checkFormat() {
+        if (!new File(gitletDir + "//HEAD").isFile()) {
+            return;
+        }
+        if (getCommit(getCurrentCommitID()).isLegacy()) {
+            throw Utils.error("This repository was written by an earlier"
+                    + " version of gitlet; run gitlet migrate first.");
+        }
+    }
+
+    /** Returns the working directory of the repository. */
+    public File getWorkDir() {
+        return workDir;
+    }
+
+    /** Does the init operation.  Throws a GitletException.Conflict
+     *  if the repository already exists. */
+    public void init() {
+        if (new File(gitletDir).exists()) {
+            throw new GitletException.Conflict("A Gitlet version-control"
+                    + " system already exists in the current directory.");
+        }
+        currentStage = null;
+        currentRemotes = null;
+        currentHead = null;
+        index = null;
+        createDir(gitletDir);
+        createDir(gitletDir + "//logs");
+        createFile(gitletDir + "//logs", "commits");
+        createDir(gitletDir + "//refs");
+        createDir(gitletDir + "//refs//heads");
+        createDir(gitletDir + "//objects");
+        createFile(gitletDir, "HEAD");
+        createFile(gitletDir, "remotes");
+        updateRemoteStorer(new RemoteStorer());
+        CommitLogFile.append(gitletDir, initialCommit());
+        MessageIndex.update(gitletDir);
+    }
+
+    /** Create the initial commit.
+     *  Returns the string of the initial commit. */
+    private String initialCommit() {
+        String message = "initial commit";
+        long time = Instant.EPOCH.toEpochMilli();
+        String commit = Commit.createCommit(gitletDir, new HashMap<>(),
+                "None", time, message);
+        setBranchHead("heads/master", commit);
+        setHead("heads/master");
+        Stage stage = new Stage(getCommit(getCurrentCommitID()));
+        writeStage(stage);
+        return commit;
+    }
+
+    /** Adds the files FILENAMES to the staging area, hashing and
+     *  storing them in parallel first. */
+    public void add(String... fileNames) {
+        List<String> names = Arrays.asList(fileNames);
+        for (String fileName : names) {
+            if (!workFile(fileName).exists()) {
+                throw new GitletException.NotFound("File does not exist.");
+            }
+        }
+        if (names.size() > 1) {
+            index().hashAll(names, true);
+        }
+        Stage stage = getStage();
+        for (String fileName : names) {
+            stage.add(fileName, index().store(fileName));
+        }
+        writeStage(stage);
+    }
+
+    /** Does the commit operation with commit message
+     *  MESSAGE.  Throws a GitletException if nothing is staged. */
+    public void commit(String message) {
+        Stage stage = getStage();
+        if (!stage.getChanged()) {
+            throw Utils.error("No changes added to the commit.");
+        }
+        String commitID = stage.commitStage(gitletDir, message);
+        setBranchHead(getCurrentRef(), commitID);
+        CommitLogFile.append(gitletDir, commitID);
+        MessageIndex.update(gitletDir);
+        stage = new Stage(getCommit(getCurrentCommitID()));
+        writeStage(stage);
+    }
+
+    /** Does the merge commit operation with commit message
+     *  MESSAGE and given branch ID GIVID. */
+    private void mergeCommit(String message, String givID) {
+        Stage stage = getStage();
+        if (!stage.getChanged()) {
+            throw Utils.error("No changes added to the commit.");
+        }
+        String commitID = stage.commitStage(gitletDir, message, givID);
+        setBranchHead(getCurrentRef(), commitID);
+        CommitLogFile.append(gitletDir, commitID);
+        MessageIndex.update(gitletDir);
+        stage = new Stage(getCommit(getCurrentCommitID()));
+        writeStage(stage);
+    }
+
+    /** Removes the FILENAME from repo. */
+    public void remove(String fileName) {
+        Stage stage = getStage();
+        if (stage.remove(fileName)) {
+            Utils.restrictedDelete(workFile(fileName));
+        }
+        writeStage(stage);
+    }
+
+    /** Displays the log of the commits of the branch. */
+    public void log() {
+        Commit commit = getCommit(getCurrentCommitID());
+        while (!commit.getParentID().equals("None")) {
+            printCommitLog(commit);
+            System.out.println();
+            commit = getCommit(commit.getParentID());
+        }
+        printCommitLog(commit);
+    }
+
+    /** Helper function which prints out the log
+     *  for the COMMIT. */
+    private void printCommitLog(Commit commit) {
+        StringBuilder stringBuilder = new StringBuilder("===\n");
+        stringBuilder.append(String.format("commit %s\n", commit.getID()));
+        if (commit.isMergeCommit()) {
+            String parent = commit.getParentID().substring(0, 7);
+            String secondParent = commit.getSecondParentID().substring(0, 7);
+            stringBuilder.append(String.
+                    format("Merge: %s %s\n", parent, secondParent));
+        }
+        stringBuilder.append(String.format("Date: %s\n%s",
+                commit.getTime(), commit.getMessage()));
+        System.out.println(stringBuilder.toString());
+    }
+
+    /** Show log of all the commits ever made. */
+    public void globalLog() {
+        for (String commitID: CommitLogFile.ids(gitletDir)) {
+            printCommitLog(getCommit(commitID));
+            System.out.println();
+        }
+    }
+
+    /** Returns the IDs of the commits with the message MESSAGE. */
+    public List<String> find(String message) {
+        return MessageIndex.findExact(gitletDir, message);
+    }
+
+    /** Returns the IDs of the commits whose message contains TEXT. */
+    public List<String> findContaining(String text) {
+        return MessageIndex.findContaining(gitletDir, text);
+    }
+
+    /** Returns the IDs of the commits whose message contains a match
+     *  of the regular expression REGEX. */
+    public List<String> findMatching(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw Utils.error("Invalid regular expression.");
+        }
+        return MessageIndex.findMatching(gitletDir, pattern);
+    }
+
+    /** Displays the status of the repo. */
+    public void status() {
+        String currentBranch = getCurrentBranchName();
+        System.out.println("=== Branches ===");
+        for (String branch: getAllBranches()) {
+            if (branch.equals(currentBranch)) {
+                System.out.println(String.format("*%s", branch));
+            } else {
+                System.out.println(branch);
+            }
+        }
+        System.out.println();
+
+        Stage stage = getStage();
+        System.out.println("=== Staged Files ===");
+        for (String fileName: stage.getStaged()) {
+            System.out.println(fileName);
+        }
+        System.out.println();
+
+        System.out.println("=== Removed Files ===");
+        for (String fileName: stage.getRemoved()) {
+            System.out.println(fileName);
+        }
+        System.out.println();
+
+        List<String> workDirFiles = Utils.plainFilenamesIn(workDir);
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String fileName: getDelNotStaged(stage, workDirFiles)) {
+            System.out.println(String.format("%s (deleted)", fileName));
+        }
+        for (String fileName: getModNotStaged(stage, workDirFiles)) {
+            System.out.println(String.format("%s (modified)", fileName));
+        }
+        System.out.println();
+
+        System.out.println("=== Untracked Files ===");
+        for (String fileName: getUntrackedFiles(stage, workDirFiles)) {
+            System.out.println(fileName);
+        }
+    }
+
+    /** Checks out the file FILENAME in the current commit. */
+    public void checkoutFile(String fileName) {
+        HashMap<String, String> blobMap =
+                getCommit(getCurrentCommitID()).getBlobs();
+        if (!blobMap.containsKey(fileName)) {
+            throw new GitletException.NotFound(
+                    "File does not exist in that commit.");
+        }
+        writeBlobFile(blobMap.get(fileName), fileName);
+    }
+
+    /** Checks out the file FILENAME in the commit with ID
+     *  COMMITID. */
+    public void checkoutCommitFile(String commitID,
+                                   String fileName) {
+        if (commitID.length() < ID_LENGTH) {
+            commitID = getFullID(commitID);
+        }
+        HashMap<String, String> blobMap =
+                getCommit(commitID).getBlobs();
+        if (!blobMap.containsKey(fileName)) {
+            throw new GitletException.NotFound(
+                    "File does not exist in that commit.");
+        }
+        writeBlobFile(blobMap.get(fileName), fileName);
+    }
+
+    /** Checks out the branch with name BRANCHNAME. */
+    public void checkoutBranch(String branchName) {
+        String branchCommitID = Refs.get(gitletDir, refName(branchName));
+        if (branchCommitID == null) {
+            throw new GitletException.NotFound(
+                    "No such branch exists.");
+        }
+        if (branchName.equals(getCurrentBranchName())) {
+            throw Utils.error("No need to checkout the current branch.");
+        }
+        Stage stage = getStage();
+        List<String> workDirFiles = Utils.plainFilenamesIn(workDir);
+        Set<String> unTracked = getUntrackedFiles(stage, workDirFiles);
+        Commit newCommit = getCommit(branchCommitID);
+        HashMap<String, String> commitBlobs = newCommit.getBlobs();
+        for (String file: unTracked) {
+            if (commitBlobs.containsKey(file)) {
+                throw new GitletException.Conflict(
+                        "There is an untracked file in the way;"
+                                + " delete it or add it first.");
+            }
+        }
+        Set<String> modNotStaged = getModNotStaged(stage, workDirFiles);
+        for (String file: modNotStaged) {
+            if (commitBlobs.containsKey(file)) {
+                throw new GitletException.Conflict(
+                        "There is an untracked file in the way;"
+                                + " delete it or add it first.");
+            }
+        }
+        Commit currCommit = getCommit(getCurrentCommitID());
+        setHead(refName(branchName));
+        checkoutCommit(currCommit, newCommit, stage, workDirFiles);
+        Stage newStage = new Stage(
+                getCommit(getCurrentCommitID()));
+        writeStage(newStage);
+    }
+
+
+    /** Updates the working directory, whose files are WORKDIRFILES,
+     *  from the CURRCOMMIT with STAGE to NEWCOMMIT.  Only files that
+     *  differ between the two commits, or that are staged, removed
+     *  or deleted, are looked at; of those, files whose working copy
+     *  already has the right contents are left alone. */
+    private void checkoutCommit(Commit currCommit, Commit newCommit,
+                                       Stage stage,
+                                       List<String> workDirFiles) {
+        TreeSet<String> candidates = new TreeSet<>(Tree.diff(gitletDir,
+                currCommit.getTreeID(), newCommit.getTreeID()).keySet());
+        HashMap<String, String> newBlobs = newCommit.getBlobs();
+        HashMap<String, String> currBlobs = currCommit.getBlobs();
+        for (String file: candidates) {
+            assert currBlobs.containsKey(file) || newBlobs.containsKey(file)
+                : "tree diff names untracked path " + file;
+        }
+        candidates.addAll(stage.getStaged());
+        candidates.addAll(stage.getRemoved());
+        candidates.addAll(getDelNotStaged(stage, workDirFiles));
+        Set<String> tracked = stage.getTracked();
+        for (String file: candidates) {
+            String blobID = newBlobs.get(file);
+            if (blobID != null) {
+                if (!workFile(file).isFile()
+                        || !blobID.equals(index().getSha1(file))) {
+                    writeBlobFile(blobID, file);
+                }
+            } else if (tracked.contains(file)) {
+                Utils.restrictedDelete(workFile(file));
+            }
+        }
+    }
+
+    /** Creates the branch with name BRANCHNAME. */
+    public void branch(String branchName) {
+        if (Refs.get(gitletDir, refName(branchName)) != null) {
+            throw new GitletException.Conflict(
+                    "A branch with that name already exists.");
+        }
+        setBranchHead(refName(branchName), getCurrentCommitID());
+    }
+
+    /** Removes the branch with name BRANCHNAME. */
+    public void removeBranch(String branchName) {
+        if (Refs.get(gitletDir, refName(branchName)) == null) {
+            throw new GitletException.NotFound(
+                    "A branch with that name does not exist.");
+        }
+        if (getCurrentBranchName().equals(branchName)) {
+            throw Utils.error("Cannot remove the current branch.");
+        }
+        Refs.delete(gitletDir, refName(branchName));
+    }
+
+    /** Resets the repo to the commit with ID COMMITID. */
+    public void reset(String commitID) {
+        if (commitID.length() < ID_LENGTH) {
+            commitID = getFullID(commitID);
+        }
+        Commit newCommit = getCommit(commitID);
+        HashMap<String, String> blobMap = newCommit.getBlobs();
+        Stage stage = getStage();
+        List<String> workDirFiles = Utils.plainFilenamesIn(workDir);
+        Set<String> unTracked = getUntrackedFiles(stage, workDirFiles);
+        for (String file: unTracked) {
+            if (blobMap.containsKey(file)) {
+                throw new GitletException.Conflict(
+                        "There is an untracked file in the way;"
+                                + " delete it or add it first.");
+            }
+        }
+        Set<String> modNotStaged = getModNotStaged(stage, workDirFiles);
+        for (String file: modNotStaged) {
+            if (blobMap.containsKey(file)) {
+                throw new GitletException.Conflict(
+                        "There is an untracked file in the way;"
+                                + " delete it or add it first.");
+            }
+        }
+        checkoutCommit(getCommit(getCurrentCommitID()), newCommit,
+                stage, workDirFiles);
+        setBranchHead(getCurrentRef(), commitID);
+        Stage newStage = new Stage(getCommit(commitID));
+        writeStage(newStage);
+    }
+
+    /** Does error checking for merge operation on
+     *  branch BRANCHNAME. */
+    private void mergeErrorCheck(String branchName) {
+        Stage stage = getStage();
+        if (stage.getStaged().size()
+                + stage.getRemoved().size() != 0) {
+            throw new GitletException.Conflict(
+                    "You have uncommitted changes.");
+        }
+        if (Refs.get(gitletDir, refName(branchName)) == null) {
+            throw new GitletException.NotFound(
+                    "A branch with that name does not exist.");
+        }
+        if (branchName.equals(getCurrentBranchName())) {
+            throw Utils.error("Cannot merge a branch with itself.");
+        }
+    }
+
+    /** Outcome of a merge that did not fail. */
+    public enum MergeResult {
+        /** The given branch was already merged; nothing changed. */
+        ANCESTOR,
+        /** The current branch was moved to the given branch. */
+        FAST_FORWARD,
+        /** A merge commit was made. */
+        MERGED,
+        /** A merge commit was made with conflicting files, which hold
+         *  both versions. */
+        CONFLICT
+    }
+
+    /** Merges the branch BRANCHNAME to the current branch, returning
+     *  how. */
+    public MergeResult merge(String branchName) {
+        boolean mergeConflict = false;
+        mergeErrorCheck(branchName);
+        String currentID = getCurrentCommitID();
+        String givenID = Refs.get(gitletDir, refName(branchName));
+        String splitPointID = getSplitPoint(currentID, givenID);
+        if (splitPointID.equals(givenID)) {
+            return MergeResult.ANCESTOR;
+        }
+        if (splitPointID.equals(currentID)) {
+            reset(givenID);
+            return MergeResult.FAST_FORWARD;
+        }
+        HashMap<String, String> splitMap =
+                getCommit(splitPointID).getBlobs();
+        HashMap<String, String> currMap =
+                getCommit(currentID).getBlobs();
+        HashMap<String, String> givMap =
+                getCommit(givenID).getBlobs();
+        for (String splitFile: splitMap.keySet()) {
+            spltUntrkCheck(splitFile, splitMap, currMap,
+                    givMap);
+        }
+        notSpltUntrkCheck(splitMap, currMap, givMap);
+
+        for (String splitFile: splitMap.keySet()) {
+            if (splitPointFileMerge(splitFile, splitMap, currMap,
+                    givMap, givenID)) {
+                mergeConflict = true;
+            }
+        }
+        if (notInSplitPointMerge(splitMap, currMap, givMap,
+                givenID)) {
+            mergeConflict = true;
+        }
+        String commitMessage = String.format("Merged %s into %s.", branchName,
+                getCurrentBranchName());
+        mergeCommit(commitMessage, givenID);
+        return mergeConflict ? MergeResult.CONFLICT : MergeResult.MERGED;
+    }
+
+    /** Perform the error check for untracked files
+     *  FILENAME in splitPoint if FILENAME is unctracked.
+     *  Using SPLITMAP, CURRMAP, GIVMAP.
+     *  Returns boolean indicating whether it is a merge
+     *  conflict or not.*/
+    private void spltUntrkCheck(String fileName,
+                                       HashMap<String, String> splitMap,
+                                       HashMap<String, String> currMap,
+                                       HashMap<String, String> givMap) {
+        Set<String> unTracked = getUntrackedFiles(getStage(),
+                Utils.plainFilenamesIn(workDir));
+        Set<String> modNotStaged = getModNotStaged(getStage(),
+                Utils.plainFilenamesIn(workDir));
+        if (!modNotStaged.contains(fileName)
+                && !unTracked.contains(fileName)) {
+            return;
+        }
+        String splitSha1 = splitMap.get(fileName);
+        String currSha1 = currMap.get(fileName);
+        String givSha1 = givMap.get(fileName);
+        if (currSha1 != null) {
+            if (splitSha1.equals(currSha1)) {
+                if (givSha1 == null) {
+                    throw new GitletException.Conflict(
+                            "There is an untracked file in the"
+                            + " way delete it or add it first.");
+                } else {
+                    if (!splitSha1.equals(givSha1)) {
+                        throw new GitletException.Conflict(
+                                "There is an untracked"
+                                + " file in the way; delete it or"
+                                + " add it first.");
+                    }
+                }
+            }
+        } else {
+            if (!splitSha1.equals(givSha1)) {
+                throw new GitletException.Conflict(
+                        "There is an untracked file in the way;"
+                        + " delete it or add it first.");
+            }
+        }
+    }
+
+    /** Perform the merge cases for FILENAME in splitPoint.
+     *  Using SPLITMAP, CURRMAP, GIVMAP, GIVENID.
+     *  Returns boolean indicating whether it is a merge
+     *  conflict or not.*/
+    private boolean splitPointFileMerge(String fileName,
+                                               HashMap<String, String> splitMap,
+                                               HashMap<String, String> currMap,
+                                               HashMap<String, String> givMap,
+                                               String givenID) {
+        String splitSha1 = splitMap.get(fileName);
+        String currSha1 = currMap.get(fileName);
+        String givSha1 = givMap.get(fileName);
+        if (currSha1 != null) {
+            if (splitSha1.equals(currSha1)) {
+                if (givSha1 == null) {
+                    remove(fileName);
+                    return false;
+                } else {
+                    if (!splitSha1.equals(givSha1)) {
+                        checkoutCommitFile(givenID, fileName);
+                        add(fileName);
+                        return false;
+                    }
+                }
+            } else {
+                if (givSha1 == null
+                        || !currSha1.equals(givSha1)) {
+                    conflict(fileName, currSha1,
+                            givSha1);
+                    add(fileName);
+                    return true;
+                }
+            }
+        } else {
+            if (givSha1 == null
+                    || splitSha1.equals(givSha1)) {
+                return false;
+            } else {
+                conflict(fileName, null, givSha1);
+                add(fileName);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Error check for untracked files for files not in
+     *  the split point, comparing SPLITMAP, CURRMAP,
+     *  and GIVMAP. */
+    private void notSpltUntrkCheck(
+            HashMap<String, String> splitMap,
+            HashMap<String, String> currMap,
+            HashMap<String, String> givMap) {
+        Set<String> unTracked = getUntrackedFiles(getStage(),
+                Utils.plainFilenamesIn(workDir));
+        Set<String> modNotStaged = getModNotStaged(getStage(),
+                Utils.plainFilenamesIn(workDir));
+        for (String currFile : currMap.keySet()) {
+            if (splitMap.containsKey(currFile)) {
+                continue;
+            }
+            if (givMap.containsKey(currFile)) {
+                if (!sameContent(currFile, currMap, givMap)) {
+                    if (modNotStaged.contains(currFile)) {
+                        throw new GitletException.Conflict(
+                                "There is an untracked file in the"
+                                + " way delete it or add it first.");
+                    }
+                }
+            }
+        }
+        for (String givFile : givMap.keySet()) {
+            if (splitMap.containsKey(givFile)) {
+                continue;
+            }
+            if (!currMap.containsKey(givFile)) {
+                if (unTracked.contains(givFile)) {
+                    throw new GitletException.Conflict(
+                            "There is an untracked file in the way;"
+                            + " delete it or add it first.");
+                }
+            }
+        }
+    }
+
+    /** Perform the merge cases for files not in splitPoint.
+     *  Using SPLITMAP, CURRMAP, GIVMAP, GIVENID.
+     *  Returns boolean indicating whether it is a merge
+     *  conflict or not.*/
+    private boolean notInSplitPointMerge(
+            HashMap<String, String> splitMap,
+            HashMap<String, String> currMap,
+            HashMap<String, String> givMap,
+            String givenID) {
+        boolean mergeConflict = false;
+        for (String currFile: currMap.keySet()) {
+            if (splitMap.containsKey(currFile)) {
+                continue;
+            }
+            if (givMap.containsKey(currFile)) {
+                if (!sameContent(currFile, currMap, givMap)) {
+                    conflict(currFile, currMap.get(currFile),
+                            givMap.get(currFile));
+                    add(currFile);
+                    mergeConflict = true;
+                }
+            }
+        }
+        for (String givFile: givMap.keySet()) {
+            if (splitMap.containsKey(givFile)) {
+                continue;
+            }
+            if (!currMap.containsKey(givFile)) {
+                checkoutCommitFile(givenID, givFile);
+                add(givFile);
+            }
+        }
+        return mergeConflict;
+    }
+
+    /** Returns true if the content of FILENAME is the same in
+     *  COMMITONE and COMMITTWO. */
+    private boolean sameContent(String fileName,
+                                       HashMap<String, String> commitOne,
+                                       HashMap<String, String> commitTwo) {
+        return commitOne.get(fileName).equals(commitTwo.get(fileName));
+    }
+
+    /** Performs the anction when FILENAME in CURRMAP and GIVMAP
+     *  have conflicts. */
+    private void conflict(String fileName,
+                                 String currMap, String givMap) {
+        StringBuilder content = new StringBuilder("<<<<<<< HEAD\n");
+        if (currMap != null) {
+            content.append(readBlobFile(currMap));
+        }
+        content.append("=======\n");
+        if (givMap != null) {
+            content.append(readBlobFile(givMap));
+        }
+        content.append(">>>>>>>\n");
+        Utils.writeContents(workFile(fileName), content.toString());
+        index().forget(fileName);
+    }
+
+    /** Returns the split point between CURRENTCOMMIT and GIVENCOMMIT:
+     *  their latest common ancestor, following both parents of
+     *  merge commits. */
+    private String getSplitPoint(String currentCommit,
+                                        String givenCommit) {
+        CommitGraph graph = CommitGraph.get(gitletDir);
+        int splitPoint = graph.mergeBase(currentCommit, givenCommit);
+        if (splitPoint == CommitGraph.NONE) {
+            throw Utils.error("Given branch has no common ancestor"
+                    + " with the current branch.");
+        }
+        return graph.getID(splitPoint);
+    }
+
+    /** Rewrites the blobs of every commit in the repository so
+     *  that blob IDs depend only on file contents, and rewrites the
+     *  commits written by earlier versions of gitlet in the current
+     *  format. Commit IDs and branches are left unchanged. */
+    public void migrate() {
+        HashSet<String> commitIDs = new HashSet<>();
+        ArrayList<String> toVisit = new ArrayList<>();
+        for (String id : CommitLogFile.ids(gitletDir)) {
+            toVisit.add(id);
+        }
+        toVisit.addAll(Refs.list(gitletDir, "").values());
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.remove(toVisit.size() - 1);
+            if (id.equals("None") || !commitIDs.add(id)) {
+                continue;
+            }
+            Commit commit = getCommit(id);
+            toVisit.add(commit.getParentID());
+            if (commit.isMergeCommit()) {
+                toVisit.add(commit.getSecondParentID());
+            }
+        }
+
+        HashMap<String, String> newIDs = new HashMap<>();
+        for (String id : commitIDs) {
+            Commit commit = getCommit(id);
+            HashMap<String, String> blobs = new HashMap<>();
+            boolean changed = false;
+            for (String file : commit.getBlobs().keySet()) {
+                String oldID = commit.getBlobs().get(file);
+                if (!newIDs.containsKey(oldID)) {
+                    newIDs.put(oldID, Blob.migrate(gitletDir, oldID));
+                }
+                blobs.put(file, newIDs.get(oldID));
+                changed |= !oldID.equals(newIDs.get(oldID));
+            }
+            if (changed || commit.isLegacy()) {
+                commit.replaceBlobs(blobs);
+            }
+        }
+
+        Stage stage = getStage();
+        for (String file : stage.getStagedMap().keySet()) {
+            String oldID = stage.getStagedMap().get(file);
+            if (!newIDs.containsKey(oldID)) {
+                newIDs.put(oldID, Blob.migrate(gitletDir, oldID));
+            }
+        }
+        stage.remap(newIDs, getCommit(getCurrentCommitID()));
+        writeStage(stage);
+
+        for (String oldID : newIDs.keySet()) {
+            if (!oldID.equals(newIDs.get(oldID))) {
+                ObjectStore.deleteLoose(gitletDir, oldID);
+            }
+        }
+    }
+
+    /** Folds the loose objects of the repository into packs, storing
+     *  blobs as deltas against the previous version of their file, and
+     *  its loose refs into packed-refs. */
+    public void gc() {
+        ObjectStore.gc(gitletDir, deltaBases());
+        Refs.pack(gitletDir);
+    }
+
+    /** Returns a map pairing each blob that replaced another version
+     *  of the same file, in some commit of the log, with that earlier
+     *  version.  Chains of bases are at most pack.depth long. */
+    private HashMap<String, String> deltaBases() {
+        int maxDepth = Config.getInt(gitletDir, "pack.depth",
+                DEFAULT_DELTA_DEPTH);
+        HashMap<String, String> bases = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        for (String id : CommitLogFile.ids(gitletDir)) {
+            Commit commit = getCommit(id);
+            String parentID = commit.getParentID();
+            if (parentID == null || parentID.equals("None")
+                    || !ObjectStore.contains(gitletDir, parentID)) {
+                continue;
+            }
+            String parentTree = getCommit(parentID).getTreeID();
+            for (String[] change : Tree.diff(gitletDir, parentTree,
+                    commit.getTreeID()).values()) {
+                String base = change[0];
+                String blob = change[1];
+                if (base == null || blob == null
+                        || depths.containsKey(blob)) {
+                    continue;
+                }
+                depths.putIfAbsent(base, 0);
+                int depth = depths.get(base) + 1;
+                if (depth <= maxDepth) {
+                    bases.put(blob, base);
+                    depths.put(blob, depth);
+                } else {
+                    depths.put(blob, 0);
+                }
+            }
+        }
+        return bases;
+    }
+
+    /** Adds remote with name NAME, and directory DIREC. */
+    public void addRemote(String name, String direc) {
+        String dir = direc;
+        if (!direc.startsWith(Transport.SCHEME)) {
+            String[] split = direc.split("/");
+            dir = split[0];
+            for (int i = 1; i < split.length; i++) {
+                dir = dir + File.separator + split[i];
+            }
+        }
+        RemoteStorer remoteStorer = getRemoteStorer();
+        if (remoteStorer.contains(name)) {
+            throw new GitletException.Conflict(
+                    "A remote with that name already exists.");
+        }
+        remoteStorer.add(name, dir);
+        updateRemoteStorer(remoteStorer);
+    }
+
+
+    /** Removes remote with name NAME. */
+    public void removeRemote(String name) {
+        RemoteStorer remoteStorer = getRemoteStorer();
+        if (!remoteStorer.contains(name)) {
+            throw new GitletException.NotFound(
+                    "A remote with that name does not exist.");
+        }
+        remoteStorer.remove(name);
+        updateRemoteStorer(remoteStorer);
+    }
+
+    /** Lets this repository read the objects of the repository with
+     *  .gitlet directory DIREC without copying them, so that push and
+     *  fetch skip them too. */
+    public void addAlternate(String direc) {
+        ObjectStore.addAlternate(gitletDir, resolve(direc));
+    }
+
+    /** Returns the remote storer.  Remotes written by an earlier
+     *  version of gitlet are rewritten in the current format by the
+     *  next save. */
+    private RemoteStorer getRemoteStorer() {
+        if (currentRemotes == null) {
+            byte[] bytes = Utils.readContents(
+                    new File(gitletDir + "//remotes"));
+            currentRemotes = RemoteStorer.decode(bytes);
+            remotesDirty = Utils.isSerialized(bytes);
+        }
+        return currentRemotes;
+    }
+
+    /** Updates the remote storer to REM. */
+    private void updateRemoteStorer(RemoteStorer rem) {
+        currentRemotes = rem;
+        remotesDirty = true;
+    }
+
+    /** Push to BRANCHNAME on REMOTENAME. */
+    public void push(String remoteName, String branchName) {
+        Remote remote = getRemoteStorer().getRemote(remoteName);
+        if (remote == null) {
+            throw new GitletException.NotFound(
+                    "A remote with that name does not exist.");
+        }
+        String comID = getCurrentCommitID();
+        try (Transport transport = Transport.open(gitletDir,
+                resolve(remote.getDirectory()))) {
+            String remComID = transport.refs().get(branchName);
+            if (remComID != null) {
+                if (remComID.equals(comID)) {
+                    return;
+                }
+                checkNeedPullBeforePush(remComID);
+            }
+            transport.send(comID);
+            transport.updateRef(branchName, remComID, comID);
+        }
+    }
+
+    /** Check if needs to pull before pushing.
+     *  Check by see if REMCOMID is part of history
+     *  of this branch. */
+    private void checkNeedPullBeforePush(String remComID) {
+        if (!ObjectStore.contains(gitletDir, remComID)
+                || !CommitGraph.get(gitletDir).isAncestor(remComID,
+                        getCurrentCommitID())) {
+            throw new GitletException.Conflict(
+                    "Please pull down remote changes before pushing.");
+        }
+    }
+
+    /** Fetch from BRANCHNAME from REMOTENAME. */
+    public void fetch(String remoteName, String branchName) {
+        Remote remote = getRemoteStorer().getRemote(remoteName);
+        if (remote == null) {
+            throw new GitletException.NotFound(
+                    "A remote with that name does not exist.");
+        }
+        try (Transport transport = Transport.open(gitletDir,
+                resolve(remote.getDirectory()))) {
+            String comID = transport.refs().get(branchName);
+            if (comID == null) {
+                throw new GitletException.NotFound(
+                    "That remote does not have that branch.");
+            }
+            String localRef = refName(remoteName + "/" + branchName);
+            if (comID.equals(Refs.get(gitletDir, localRef))) {
+                return;
+            }
+
+            transport.receive(comID);
+
+            setBranchHead(localRef, comID);
+        }
+    }
+
+    /** Serves this repository to other repositories on PORT, or on
+     *  any free port if PORT is 0, until killed. */
+    public void serve(int port) {
+        Server server = new Server(gitletDir, port);
+        System.out.println("Serving on port " + server.getPort() + ".");
+        server.serve();
+    }
+
+    /** Pull from BRANCHNAME in REMOTENAME, returning how the fetched
+     *  branch was merged. */
+    public MergeResult pull(String remoteName, String branchName) {
+        fetch(remoteName, branchName);
+        return merge(remoteName + "/" + branchName);
+    }
+
+    /** Creates files inside of DIRNAME, with file name FILENAME.
+     *  Assumes that the directory already exists.
+     */
+    private void createFile(String dirName, String fileName) {
+        try {
+            assert (new File(dirName).exists()) : dirName
+                    + "directory does not exist";
+            File file = new File(dirName + "//" + fileName);
+            if (!file.createNewFile()) {
+                Utils.message("File already exists.");
+            }
+        } catch (IOException e) {
+            throw Utils.error("File creation unsuccessful.");
+        }
+    }
+
+    /** Creates the director DIRNAME. */
+    private void createDir(String dirName) {
+        try {
+            File file = new File(dirName);
+            if (!file.mkdir()) {
+                throw new IOException();
+            }
+        } catch (IOException e) {
+            throw Utils.error("Directory creation unsuccessful.");
+        }
+    }
+
+    /** Returns the name of the ref of the current branch.  HEAD holds
+     *  the path of its loose file, as it always has. */
+    private String getCurrentRef() {
+        if (currentHead == null) {
+            currentHead = Utils.readContentsAsString(
+                    new File(gitletDir + "//HEAD"));
+        }
+        return currentHead.substring(REFS_DIR.length() + 2)
+                .replace("//", "/");
+    }
+
+    /** Returns the current branch name. */
+    private String getCurrentBranchName() {
+        String ref = getCurrentRef();
+        return ref.substring(ref.indexOf('/') + 1);
+    }
+
+    /** Returns the current commit ID. */
+    private String getCurrentCommitID() {
+        return Refs.get(gitletDir, getCurrentRef());
+    }
+
+    /** Returns the name of the ref of branch BRANCHNAME: that of a
+     *  remote-tracking branch if it has the form REMOTE/BRANCH. */
+    private String refName(String branchName) {
+        return (branchName.contains("/") ? "remotes/" : "heads/")
+                + branchName;
+    }
+
+    /** Sets the COMMIT as head of the branch with ref REF. */
+    private void setBranchHead(String ref, String commit) {
+        Refs.set(gitletDir, ref, commit);
+    }
+
+    /** Sets the branch with ref REF as the head. */
+    private void setHead(String ref) {
+        currentHead = REFS_DIR + "//" + ref.replace("/", "//");
+        Utils.writeContents(new File(gitletDir + "//HEAD"), currentHead);
+    }
+
+    /** Returns the stage.  A stage written by an earlier version of
+     *  gitlet is rewritten in the current format by the next save. */
+    private Stage getStage() {
+        if (currentStage == null) {
+            byte[] bytes = Utils.readContents(
+                    new File(gitletDir + "//stage"));
+            currentStage = Stage.decode(gitletDir, bytes);
+            stageDirty = Utils.isSerialized(bytes);
+        }
+        return currentStage;
+    }
+
+    /** Makes STAGE the stage, to be written by save. */
+    private void writeStage(Stage stage) {
+        currentStage = stage;
+        stageDirty = true;
+    }
+
+    /** Returns the index of the working files, loading it on first
+     *  use. */
+    private Index index() {
+        if (index == null) {
+            index = Index.load(gitletDir, workDir);
+        }
+        return index;
+    }
+
+    /** Returns the working file FILENAME. */
+    private File workFile(String fileName) {
+        return new File(workDir, fileName);
+    }
+
+    /** Returns the commit with ID COMMITID. */
+    private Commit getCommit(String commitID) {
+        return Commit.getRemCommit(commitID, gitletDir);
+    }
+
+    /** Returns the location of the remote or alternate at LOCATION,
+     *  which is relative to the working directory unless it is
+     *  absolute or served. */
+    private String resolve(String location) {
+        if (location.startsWith(Transport.SCHEME)
+                || new File(location).isAbsolute()) {
+            return location;
+        }
+        return workDir.toPath().resolve(location).normalize().toString();
+    }
+
+    /** Writes the stage, the remotes and the index back to .gitlet if
+     *  they changed since they were loaded or last saved.  Until then,
+     *  operations share them in memory, so that a batch of operations
+     *  does not read and write them for every one. */
+    public void save() {
+        if (!new File(gitletDir).isDirectory()) {
+            return;
+        }
+        if (stageDirty) {
+            stageDirty = false;
+            Utils.writeContents(new File(gitletDir + "//stage"),
+                    currentStage.encode());
+        }
+        if (remotesDirty) {
+            remotesDirty = false;
+            Utils.writeContents(new File(gitletDir + "//remotes"),
+                    currentRemotes.encode());
+        }
+        if (index != null) {
+            index.save();
+        }
+        endCommand();
+    }
+
+    /** Forgets what the repository keeps in memory only for the
+     *  duration of one command.  Called between the commands run on
+     *  the same repository. */
+    public void endCommand() {
+        if (index != null) {
+            index.endCommand();
+        }
+    }
+
+    /** Saves the repository; it may still be used afterwards, and is
+     *  saved again when next closed. */
+    @Override
+    public void close() {
+        save();
+    }
+
+    /** Returns list of all branches, in order: the local ones and the
+     *  remote-tracking ones, named REMOTE/BRANCH. */
+    private List<String> getAllBranches() {
+        TreeSet<String> result = new TreeSet<>(
+                Refs.list(gitletDir, "heads/").keySet());
+        result.addAll(Refs.list(gitletDir, "remotes/").keySet());
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the string from reading the file of BLOBID. */
+    private String readBlobFile(String blobID) {
+        return new String(ObjectStore.read(gitletDir, blobID),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Writes the contents of blob BLOBID to the working file
+     *  FILENAME. */
+    private void writeBlobFile(String blobID, String fileName) {
+        ObjectStore.copyTo(gitletDir, blobID, workFile(fileName));
+        index().forget(fileName);
+    }
+
+    /** Returns the deleted but not staged files of the repo
+     *  by comparing STAGE with WORKDIRFILES. */
+    private Set<String> getDelNotStaged(Stage stage,
+                                               List<String> workDirFiles) {
+        HashSet<String> present = new HashSet<>(workDirFiles);
+        Set<String> removed = stage.getRemoved();
+        TreeSet<String> result = new TreeSet<>();
+        for (String trackedFile: stage.getTracked()) {
+            if (!present.contains(trackedFile)
+                    && !removed.contains(trackedFile)) {
+                result.add(trackedFile);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the modified but not staqed files in
+     *  STAGE by looking at WORKDIRFILES. */
+    private Set<String> getModNotStaged(Stage stage,
+                                               List<String> workDirFiles) {
+        HashMap<String, String> staged = stage.getStagedMap();
+        HashMap<String, String> tracked = stage.getTrackedMap();
+        ArrayList<String> result = new ArrayList<>();
+        ArrayList<String> candidates = new ArrayList<>();
+        for (String fileName: workDirFiles) {
+            if (staged.containsKey(fileName)
+                    || tracked.containsKey(fileName)) {
+                candidates.add(fileName);
+            }
+        }
+        index().hashAll(candidates, false);
+        for (String fileName: candidates) {
+            if (staged.size() != 0 && staged.containsKey(fileName)) {
+                if (!staged.get(fileName)
+                        .equals(index().getSha1(fileName))) {
+                    result.add(fileName);
+                }
+                continue;
+            }
+            if (tracked.size() != 0 && tracked.containsKey(fileName)) {
+                if (!tracked.get(fileName)
+                        .equals(index().getSha1(fileName))) {
+                    result.add(fileName);
+                }
+            }
+        }
+        return new TreeSet<>(result);
+    }
+
+    /** Returns the untracked files in STAGE by looking at WORKDIRFILES. */
+    private Set<String> getUntrackedFiles(Stage stage,
+                                                 List<String> workDirFiles) {
+        ArrayList<String> result = new ArrayList<>();
+        Set<String> staged = stage.getStaged();
+        Set<String> tracked = stage.getTracked();
+        Set<String> removed = stage.getRemoved();
+        for (String fileName: workDirFiles) {
+            if (staged.contains(fileName)) {
+                continue;
+            }
+            if (!tracked.contains(fileName)) {
+                result.add(fileName);
+            } else {
+                if (removed.contains(fileName)) {
+                    result.add(fileName);
+                }
+            }
+        }
+        return new TreeSet<>(result);
+    }
+
+    /** Returns full ID from the abbreviated commit ID ABBR. */
+    private String getFullID(String abbr) {
+        List<String> matches = ObjectStore.findByPrefix(gitletDir, abbr,
+                ObjectStore.COMMIT);
+        if (matches.size() == 0) {
+            throw new GitletException.NotFound(
+                    "No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Commit id not unique.");
+        }
+        return matches.get(0);
+    }
+
+    /** The working directory. */
+    private final File workDir;
+    /** The .gitlet directory. */
+    private final String gitletDir;
+    /** The stage, once loaded or written. */
+    private Stage currentStage;
+    /** True if the stage changed since it was last saved. */
+    private boolean stageDirty;
+    /** The remote storer, once loaded or written. */
+    private RemoteStorer currentRemotes;
+    /** True if the remote storer changed since it was last saved. */
+    private boolean remotesDirty;
+    /** The contents of HEAD, once read or written. */
+    private String currentHead;
+    /** The index of the working files, once loaded. */
+    private Index index;
+}
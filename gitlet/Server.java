@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Class serving a repository to the clients of gitlet serve, each
+ *  on its own thread, speaking the Protocol.  It listens on the
+ *  loopback address only, so that the repository is shared between
+ *  the users of this machine without sharing its directory.
+ *  @author Chris Sreesangkom
+ */
+class Server {
+
+    /** Milliseconds to wait for a failed client to hang up. */
+    private static final int DRAIN_TIMEOUT = 10000;
+    /** Size of the buffer input is discarded into. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** A server for the repository with .gitlet directory REPODIR,
+     *  listening on PORT, or on any free port if PORT is 0. */
+    Server(String repoDir, int port) {
+        this.repoDir = repoDir;
+        try {
+            socket = new ServerSocket(port, 0,
+                    InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw Utils.error("Cannot listen on port %d.", port);
+        }
+        clients = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "gitlet-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Returns the port the server listens on. */
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /** Serves clients in a background thread until closed. */
+    void start() {
+        Thread thread = new Thread(this::serve, "gitlet-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Serves clients until closed. */
+    void serve() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                clients.execute(() -> handle(client));
+            } catch (IOException e) {
+                /* Closed, or the client went away. */
+            }
+        }
+    }
+
+    /** Stops serving and drops the clients. */
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            /* Nothing left to release. */
+        }
+        clients.shutdownNow();
+    }
+
+    /** Answers the requests of the client connected by CLIENT until it
+     *  quits, then releases the object caches. */
+    private void handle(Socket client) {
+        try (Socket connection = client) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(connection.getOutputStream()));
+            try {
+                while (request(in, out)) {
+                    out.flush();
+                }
+            } catch (GitletException | IllegalArgumentException e) {
+                out.writeUTF(Protocol.ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+                out.flush();
+                connection.shutdownOutput();
+                drain(connection);
+            }
+        } catch (EOFException e) {
+            /* The client went away. */
+        } catch (IOException e) {
+            /* The connection broke. */
+        } finally {
+            ObjectCache.release(repoDir);
+        }
+    }
+
+    /** Discards what the client of CONNECTION still sends until it
+     *  hangs up or DRAIN_TIMEOUT passes.  Closing a connection with
+     *  unread input resets it, which can drop the error just sent
+     *  before a client streaming a transfer reads it. */
+    private static void drain(Socket connection) throws IOException {
+        connection.setSoTimeout(DRAIN_TIMEOUT);
+        InputStream in = connection.getInputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (in.read(buffer) >= 0) {
+                continue;
+            }
+        } catch (SocketTimeoutException e) {
+            /* The client is not hanging up; give up on it. */
+        }
+    }
+
+    /** Reads a request from IN and answers it on OUT.  Returns false
+     *  if the client quit. */
+    private boolean request(DataInputStream in, DataOutputStream out)
+        throws IOException {
+        String request = in.readUTF();
+        switch (request) {
+        case Protocol.REFS:
+            Map<String, String> refs = Transport.readRefs(repoDir);
+            out.writeInt(refs.size());
+            for (Map.Entry<String, String> ref : refs.entrySet()) {
+                out.writeUTF(ref.getKey());
+                out.writeUTF(ref.getValue());
+            }
+            return true;
+        case Protocol.RECEIVE:
+            Protocol.receive(in, out, new Transfer.CheckingReceiver(repoDir));
+            return true;
+        case Protocol.SEND:
+            String id = Protocol.readID(in);
+            new Transfer(repoDir, new Protocol.Peer(in, out), id).run();
+            return true;
+        case Protocol.UPDATE:
+            String branch = in.readUTF();
+            String oldID = in.readUTF();
+            String newID = Protocol.readID(in);
+            if (!branch.matches("[^/\\\\.][^/\\\\]*(/[^/\\\\.][^/\\\\]*)*")) {
+                throw Utils.error("Invalid branch name.");
+            }
+            checkConnected(newID);
+            Transport.writeRef(repoDir, branch,
+                    oldID.isEmpty() ? null : oldID, newID);
+            out.writeUTF(Protocol.OK);
+            return true;
+        case Protocol.QUIT:
+            return false;
+        default:
+            throw Utils.error("Protocol error.");
+        }
+    }
+
+    /** Throws an error unless ID is a commit of the repository whose
+     *  parents, tree and blobs it has, so that a branch never names
+     *  history the repository lacks. */
+    private void checkConnected(String id) {
+        if (!ObjectStore.contains(repoDir, id)
+                || ObjectStore.type(repoDir, id) != ObjectStore.COMMIT) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        Commit commit = Commit.getRemCommit(id, repoDir);
+        ArrayList<String> needed = new ArrayList<>();
+        if (!commit.getParentID().equals("None")) {
+            needed.add(commit.getParentID());
+        }
+        if (commit.isMergeCommit()) {
+            needed.add(commit.getSecondParentID());
+        }
+        try {
+            needed.addAll(commit.getBlobs().values());
+        } catch (IllegalArgumentException e) {
+            needed.add(commit.getTreeID());
+        }
+        for (String object : needed) {
+            if (!ObjectStore.contains(repoDir, object)) {
+                throw Utils.error("Commit %s is missing objects.", id);
+            }
+        }
+    }
+
+    /** The .gitlet directory of the repository served. */
+    private final String repoDir;
+    /** The socket on which clients connect. */
+    private final ServerSocket socket;
+    /** The threads serving the clients. */
+    private final ExecutorService clients;
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Class representing a connection to a remote served by gitlet
+ *  serve, speaking the Protocol.
+ *  @author Chris Sreesangkom
+ */
+class SocketTransport implements Transport {
+
+    /** A connection from the repository with .gitlet directory
+     *  LOCALDIR to the server at ADDRESS, of the form HOST:PORT. */
+    SocketTransport(String localDir, String address) {
+        this.localDir = localDir;
+        int colon = address.lastIndexOf(':');
+        try {
+            socket = new Socket(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)));
+            in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+        } catch (IOException | RuntimeException e) {
+            throw Utils.error("Remote directory not found.");
+        }
+    }
+
+    @Override
+    public Map<String, String> refs() {
+        try {
+            out.writeUTF(Protocol.REFS);
+            out.flush();
+            HashMap<String, String> result = new HashMap<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                result.put(name, Protocol.readID(in));
+            }
+            return result;
+        } catch (IOException e) {
+            throw Utils.error("Transfer unsuccessful.");
+        }
+    }
+
+    @Override
+    public void send(String id) {
+        try {
+            out.writeUTF(Protocol.RECEIVE);
+        } catch (IOException e) {
+            throw Utils.error("Transfer unsuccessful.");
+        }
+        new Transfer(localDir, new Protocol.Peer(in, out), id).run();
+    }
+
+    @Override
+    public void receive(String id) {
+        try {
+            out.writeUTF(Protocol.SEND);
+            out.writeUTF(id);
+            out.flush();
+            Protocol.receive(in, out, new Transfer.DirectoryReceiver(localDir));
+        } catch (IOException e) {
+            throw Utils.error("Transfer unsuccessful.");
+        }
+    }
+
+    @Override
+    public void updateRef(String branch, String oldID, String newID) {
+        try {
+            out.writeUTF(Protocol.UPDATE);
+            out.writeUTF(branch);
+            out.writeUTF(oldID == null ? "" : oldID);
+            out.writeUTF(newID);
+            out.flush();
+            Protocol.readStatus(in);
+        } catch (IOException e) {
+            throw Utils.error("Transfer unsuccessful.");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.writeUTF(Protocol.QUIT);
+            out.flush();
+        } catch (IOException e) {
+            /* The server is gone already. */
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            /* Nothing left to release. */
+        }
+    }
+
+    /** The .gitlet directory of the local repository. */
+    private final String localDir;
+    /** The connection to the server. */
+    private Socket socket;
+    /** Stream from the server. */
+    private DataInputStream in;
+    /** Stream to the server. */
+    private DataOutputStream out;
+}
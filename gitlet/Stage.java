@@ -1,18 +1,35 @@
 package gitlet;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
 
 /** Class representing the staging area.
+ *
+ *  The stage file holds a header of a magic number and a format
+ *  version, the raw ID of the current commit, and the maps of
+ *  tracked, added, modified and removed files, each its size followed
+ *  by the name and raw blob ID of every file.  Stage files written by
+ *  earlier versions of gitlet are Java-serialized; they are still
+ *  read.
  *  @author Chris Sreesangkom
  */
 class Stage implements Serializable {
 
+    /** Magic number starting an encoded stage. */
+    private static final int MAGIC = 0x47535447;
+    /** Version of the stage format. */
+    private static final int VERSION = 1;
+
     /** Contructs the stage of the CURRENTCOMMIT. */
     Stage(Commit currentCommit) {
         commit = currentCommit;
@@ -22,15 +39,55 @@ class Stage implements Serializable {
         removed = new HashMap<>();
     }
 
-    /** Method for adding the file with name
-     *  FILENAME to the staging area. */
-    void add(String fileName) {
-        File file = new File(fileName);
-        if (!file.exists()) {
-            Utils.message("File does not exist.");
-            System.exit(0);
+    /** An empty stage, to be filled in by decode. */
+    private Stage() {
+    }
+
+    /** Returns the encoding of this stage. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Utils.writeID(out, commit.getID());
+            Utils.writeIDMap(out, previous);
+            Utils.writeIDMap(out, added);
+            Utils.writeIDMap(out, modified);
+            Utils.writeIDMap(out, removed);
+        } catch (IOException e) {
+            throw Utils.error("Internal error serializing stage.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the stage of the repository with .gitlet directory
+     *  REPODIR encoded as BYTES, in the current format or Java
+     *  serialization.  Throws IllegalArgumentException if BYTES are
+     *  not a stage. */
+    static Stage decode(String repoDir, byte[] bytes) {
+        if (Utils.isSerialized(bytes)) {
+            return Utils.deserialize(bytes, Stage.class);
         }
-        String fileSha1 = Blob.getSha1(file);
+        Stage stage = new Stage();
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("not a stage");
+            }
+            stage.commit = Commit.getRemCommit(Utils.readID(in), repoDir);
+            stage.previous = Utils.readIDMap(in);
+            stage.added = Utils.readIDMap(in);
+            stage.modified = Utils.readIDMap(in);
+            stage.removed = Utils.readIDMap(in);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated stage");
+        }
+        return stage;
+    }
+
+    /** Method for adding the file with name
+     *  FILENAME, whose blob is FILESHA1, to the staging area. */
+    void add(String fileName, String fileSha1) {
         if (removed.containsKey(fileName)) {
             removed.remove(fileName);
         }
@@ -41,19 +98,18 @@ class Stage implements Serializable {
                 }
             } else {
                 modified.put(fileName, fileSha1);
-                Blob.createBlobObj(file);
             }
         } else {
             added.put(fileName, fileSha1);
-            Blob.createBlobObj(file);
         }
     }
 
     /** Method for removing the file with name
      *  FILENAME from the staging area returning
-     *  TRUE if there is a change and FALSE
-     *  otherwise. */
-    void remove(String fileName) {
+     *  TRUE if its working file is to be deleted
+     *  and FALSE otherwise. */
+    boolean remove(String fileName) {
+        boolean delete = false;
         if (!previous.containsKey(fileName)
                 && !added.containsKey(fileName)) {
             Utils.message("No reason to remove the file.");
@@ -61,7 +117,7 @@ class Stage implements Serializable {
         if (previous.containsKey(fileName)) {
             if (!removed.containsKey(fileName)) {
                 removed.put(fileName, previous.get(fileName));
-                Utils.restrictedDelete(fileName);
+                delete = true;
             } else if (modified.containsKey(fileName)) {
                 modified.remove(fileName);
             }
@@ -69,13 +125,15 @@ class Stage implements Serializable {
         if (added.containsKey(fileName)) {
             added.remove(fileName);
         }
+        return delete;
     }
 
     /** Method for commiting the stage for
-     *  the commit CURRENTCOMMIT with commit
+     *  the commit CURRENTCOMMIT to the repository
+     *  with .gitlet directory REPODIR with commit
      *  message MESSAGE. Returns a string of
      *  commit. */
-    String commitStage(String message) {
+    String commitStage(String repoDir, String message) {
         long time = Instant.now().toEpochMilli();
         HashMap<String, String> commitBlobs = new HashMap<>();
         for (String file :previous.keySet()) {
@@ -86,16 +144,16 @@ class Stage implements Serializable {
         commitBlobs.putAll(modified);
         commitBlobs.putAll(added);
 
-        return Commit.createCommit(commitBlobs,
+        return Commit.createCommit(repoDir, commitBlobs,
                 commit.getID(), time , message);
     }
 
     /** Method for making a merge commit for
-     *  the commit CURRENTCOMMIT with commit
+     *  the commit CURRENTCOMMIT in REPODIR with commit
      *  message MESSAGE and GIVENBRANCHID
      *  as the second parent. Returns a string of
      *  the commit. */
-    String commitStage(String message,
+    String commitStage(String repoDir, String message,
                        String givenBranchID) {
         long time = Instant.now().toEpochMilli();
         HashMap<String, String> commitBlobs = new HashMap<>();
@@ -107,7 +165,7 @@ class Stage implements Serializable {
         commitBlobs.putAll(modified);
         commitBlobs.putAll(added);
 
-        return Commit.createCommit(commitBlobs,
+        return Commit.createCommit(repoDir, commitBlobs,
                 commit.getID(), time , message,
                 givenBranchID);
     }
@@ -156,6 +214,21 @@ class Stage implements Serializable {
         return previous;
     }
 
+    /** Replaces every blob ID in the stage that is a key of
+     *  NEWIDS with its mapped value, and makes CURRENTCOMMIT the
+     *  commit of the stage. */
+    void remap(HashMap<String, String> newIDs, Commit currentCommit) {
+        commit = currentCommit;
+        previous = currentCommit.getBlobs();
+        for (HashMap<String, String> map
+                 : List.of(added, modified, removed)) {
+            for (String file : map.keySet()) {
+                String id = map.get(file);
+                map.put(file, newIDs.getOrDefault(id, id));
+            }
+        }
+    }
+
     /** The current commit of the stage. */
     private Commit commit;
 
@@ -170,4 +243,8 @@ class Stage implements Serializable {
 
     /** Map paring of removed file names and its ID. */
     private HashMap<String, String> removed;
+
+    /** Serialization version, fixed so that objects written by
+     *  earlier versions of gitlet can still be read. */
+    private static final long serialVersionUID = 1123870906957610364L;
 }
@@ -0,0 +1,460 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Class representing the transfer of a commit, with all of its
+ *  history that the receiving repository lacks, from a repository
+ *  to a Receiver, which is another repository on disk or one at the
+ *  other end of a connection, as done by push and fetch.
+ *
+ *  The objects to send are found in one walk from the commit being
+ *  sent: the walk stops at commits, trees and blobs the receiver
+ *  already has, since having an object means having everything it
+ *  refers to.  The receiver is asked about commits in batches that
+ *  double in size, walking ahead of its answers, and about trees
+ *  and blobs one level of all the trees at a time, so that the
+ *  number of queries grows with the logarithm of the history rather
+ *  than its length.  Blobs are then copied in parallel, followed by the
+ *  trees and the commits in order, so that each object arrives
+ *  after those it refers to, which keeps that true even if the
+ *  transfer is interrupted.
+ *  @author Chris Sreesangkom
+ */
+class Transfer {
+
+    /** Number of queued copies per thread beyond which the walk
+     *  waits, copying in the calling thread. */
+    private static final int QUEUE_PER_THREAD = 4;
+    /** Largest number of commits the receiver is asked about in one
+     *  query. */
+    private static final int MAX_BATCH = 1024;
+
+    /** Interface of the receiving end of a transfer.  Its methods may
+     *  be called from several threads at once. */
+    interface Receiver {
+
+        /** Returns those of IDS that the receiver has. */
+        Set<String> present(Collection<String> ids);
+
+        /** Stores object ID, of stored form STORED, in the receiver. */
+        void write(String id, byte[] stored);
+
+        /** Stores object ID of the repository with .gitlet directory
+         *  REPODIR in the receiver without copying it, if it can.
+         *  Returns false if the object has to be written instead. */
+        boolean link(String repoDir, String id);
+
+        /** Adds commit ID, whose objects and ancestors have all been
+         *  written, to the commit log and graph of the receiver. */
+        void addCommit(String id);
+
+        /** Ends the transfer. */
+        void finish();
+    }
+
+    /** Class representing a repository on disk receiving a transfer. */
+    static class DirectoryReceiver implements Receiver {
+
+        /** A receiver storing objects in the repository with .gitlet
+         *  directory REPODIR. */
+        DirectoryReceiver(String repoDir) {
+            dir = repoDir;
+            inventory = new ObjectStore.Inventory(repoDir);
+        }
+
+        @Override
+        public synchronized Set<String> present(Collection<String> ids) {
+            return inventory.present(ids);
+        }
+
+        @Override
+        public void write(String id, byte[] stored) {
+            ObjectStore.put(dir, id, stored);
+        }
+
+        @Override
+        public boolean link(String repoDir, String id) {
+            if (linkable == null) {
+                linkable = ObjectStore.sameFileStore(repoDir, dir);
+            }
+            return linkable && ObjectStore.link(repoDir, dir, id);
+        }
+
+        @Override
+        public void addCommit(String id) {
+            synchronized (Transfer.class) {
+                CommitLogFile.append(dir, id);
+                CommitGraph.get(dir).record(Commit.getRemCommit(id, dir));
+            }
+        }
+
+        @Override
+        public void finish() {
+            MessageIndex.update(dir);
+        }
+
+        /** The .gitlet directory of the repository. */
+        private final String dir;
+        /** The objects the repository had when the transfer started. */
+        private final ObjectStore.Inventory inventory;
+        /** True if objects can be hard-linked from the sending
+         *  repository, or null until that is known. */
+        private volatile Boolean linkable;
+    }
+
+    /** Class representing a repository on disk receiving a transfer
+     *  from a peer it does not trust, such as a client of gitlet
+     *  serve.  Each object is checked against its ID, and must only
+     *  refer to objects the repository has, before it is stored. */
+    static class CheckingReceiver extends DirectoryReceiver {
+
+        /** A receiver checking objects and storing them in the
+         *  repository with .gitlet directory REPODIR. */
+        CheckingReceiver(String repoDir) {
+            super(repoDir);
+            this.repoDir = repoDir;
+        }
+
+        @Override
+        public void write(String id, byte[] stored) {
+            if (!ObjectStore.contains(repoDir, id)) {
+                ObjectStore.verify(repoDir, id, stored);
+                super.write(id, stored);
+            }
+        }
+
+        @Override
+        public void addCommit(String id) {
+            if (ObjectStore.type(repoDir, id) != ObjectStore.COMMIT) {
+                throw new IllegalArgumentException(
+                        "object " + id + " is not a commit");
+            }
+            super.addCommit(id);
+        }
+
+        /** The .gitlet directory of the repository. */
+        private final String repoDir;
+    }
+
+    /** Prepares the transfer of commit TIPID from the repository with
+     *  .gitlet directory FROMDIR to RECEIVER. */
+    Transfer(String fromDir, Receiver receiver, String tipID) {
+        this.fromDir = fromDir;
+        this.receiver = receiver;
+        sentChunks = new ConcurrentHashMap<>();
+        commits = new ArrayList<>();
+        trees = new ArrayList<>();
+        blobs = new ArrayList<>();
+        seen = new HashSet<>();
+        negotiate(tipID);
+    }
+
+    /** Sends the missing objects, then adds the commits to the
+     *  commit log and commit graph of the receiver.  Blobs are read,
+     *  re-encoded and written by transfer.threads threads (by
+     *  default, one per processor), with a bounded queue so that
+     *  memory stays flat however many there are.  Progress is
+     *  reported on the standard error if transfer.progress is set.
+     *  Both settings are those of the sending repository. */
+    void run() {
+        Progress progress = new Progress(fromDir,
+                blobs.size() + trees.size() + commits.size());
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = Math.max(1,
+                Config.getInt(fromDir, "transfer.threads", processors));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            ArrayList<Future<?>> copies = new ArrayList<>();
+            for (String id : blobs) {
+                copies.add(pool.submit(() -> {
+                    send(id);
+                    progress.step();
+                }));
+            }
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (InterruptedException e) {
+            throw Utils.error("Transfer interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw Utils.error("Transfer unsuccessful.");
+        } finally {
+            pool.shutdownNow();
+        }
+        for (String id : trees) {
+            send(id);
+            progress.step();
+        }
+        for (String id : commits) {
+            send(id);
+            receiver.addCommit(id);
+            progress.step();
+        }
+        receiver.finish();
+        progress.done();
+    }
+
+    /** Sends object ID, and those of its chunks, if it is a chunked
+     *  blob, that the receiver lacks.  Objects are linked rather than
+     *  copied when the receiver can.  A chunk shared with a blob being
+     *  sent by another thread is sent by only one of them, and the
+     *  other waits for it, so that neither blob arrives before all of
+     *  its chunks. */
+    private void send(String id) {
+        if (receiver.link(fromDir, id)) {
+            return;
+        }
+        byte[] stored = ObjectStore.export(fromDir, id);
+        List<String> chunks = new ArrayList<>();
+        List<CompletableFuture<Void>> claims = new ArrayList<>();
+        List<CompletableFuture<Void>> others = new ArrayList<>();
+        for (String chunk : ObjectStore.chunksOf(stored)) {
+            CompletableFuture<Void> claim = new CompletableFuture<>();
+            CompletableFuture<Void> prior =
+                sentChunks.putIfAbsent(chunk, claim);
+            if (prior == null) {
+                chunks.add(chunk);
+                claims.add(claim);
+            } else {
+                others.add(prior);
+            }
+        }
+        try {
+            if (!chunks.isEmpty()) {
+                chunks.removeAll(receiver.present(chunks));
+                for (String chunk : chunks) {
+                    if (!receiver.link(fromDir, chunk)) {
+                        receiver.write(chunk,
+                                ObjectStore.export(fromDir, chunk));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<Void> claim : claims) {
+                claim.completeExceptionally(e);
+            }
+            throw e;
+        }
+        for (CompletableFuture<Void> claim : claims) {
+            claim.complete(null);
+        }
+        try {
+            for (CompletableFuture<Void> other : others) {
+                other.join();
+            }
+        } catch (CompletionException e) {
+            throw Utils.error("Transfer unsuccessful.");
+        }
+        receiver.write(id, stored);
+    }
+
+    /** Returns the IDs of the commits to send, parents first. */
+    List<String> getCommits() {
+        return commits;
+    }
+
+    /** Returns the IDs of all objects to send, each after the
+     *  objects it refers to. */
+    List<String> getObjects() {
+        ArrayList<String> result = new ArrayList<>(blobs);
+        result.addAll(trees);
+        result.addAll(commits);
+        return result;
+    }
+
+    /** Finds the commits in the history of TIPID that the receiver
+     *  lacks, and their trees and blobs it lacks.
+     *
+     *  Each query walks ahead from the commits whose parents are not
+     *  known to the receiver yet, breadth first, until it has BATCH
+     *  commits, which may go past commits the receiver has.  Only
+     *  the parents of the commits it lacks are walked on from.  Since
+     *  a receiver having a commit has all its ancestors, its answer
+     *  is exact for every commit asked about. */
+    private void negotiate(String tipID) {
+        HashMap<String, Commit> missing = new HashMap<>();
+        HashMap<String, Commit> loaded = new HashMap<>();
+        HashSet<String> asked = new HashSet<>();
+        ArrayList<String> frontier = new ArrayList<>(List.of(tipID));
+        int batch = 1;
+        while (!frontier.isEmpty()) {
+            ArrayList<String> query = new ArrayList<>();
+            ArrayDeque<String> walk = new ArrayDeque<>(frontier);
+            while (!walk.isEmpty() && query.size() < batch) {
+                String id = walk.poll();
+                if (asked.add(id)) {
+                    query.add(id);
+                    Commit commit = Commit.getRemCommit(id, fromDir);
+                    loaded.put(id, commit);
+                    walk.addAll(parentsOf(commit));
+                }
+            }
+            Set<String> present = receiver.present(query);
+            frontier.clear();
+            for (String id : query) {
+                if (!present.contains(id)) {
+                    missing.put(id, loaded.get(id));
+                    for (String parent : parentsOf(loaded.get(id))) {
+                        if (!asked.contains(parent)) {
+                            frontier.add(parent);
+                        }
+                    }
+                }
+            }
+            batch = Math.min(2 * batch, MAX_BATCH);
+        }
+        ArrayList<String> roots = new ArrayList<>();
+        for (String id : parentsFirst(tipID, missing)) {
+            seen.add(id);
+            commits.add(id);
+            roots.add(missing.get(id).getTreeID());
+        }
+        Set<String> selected = select(roots);
+        ArrayList<String> newRoots = new ArrayList<>();
+        for (String root : roots) {
+            if (selected.remove(root)) {
+                newRoots.add(root);
+            }
+        }
+        Tree.collect(fromDir, newRoots, this::select, trees, blobs);
+    }
+
+    /** Returns the IDs of the parents of COMMIT. */
+    private static List<String> parentsOf(Commit commit) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String parent : new String[] {
+                commit.getParentID(), commit.getSecondParentID()}) {
+            if (parent != null && !parent.equals("None")) {
+                result.add(parent);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the IDs of the commits MISSING, which are TIPID and
+     *  some of its ancestors, each after those of its parents that
+     *  are among them. */
+    private static List<String> parentsFirst(String tipID,
+                                             Map<String, Commit> missing) {
+        ArrayList<String> result = new ArrayList<>();
+        HashSet<String> visited = new HashSet<>();
+        HashSet<String> added = new HashSet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        if (missing.containsKey(tipID)) {
+            pending.push(tipID);
+        }
+        while (!pending.isEmpty()) {
+            String id = pending.peek();
+            boolean ready = true;
+            if (visited.add(id)) {
+                for (String parent : parentsOf(missing.get(id))) {
+                    if (missing.containsKey(parent)
+                            && !visited.contains(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                pending.pop();
+                if (added.add(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns those of the objects IDS that are neither being sent
+     *  already nor in the receiver, marking them as being sent.  The
+     *  receiver is asked about all of them in one query. */
+    private Set<String> select(List<String> ids) {
+        HashSet<String> result = new HashSet<>();
+        for (String id : ids) {
+            if (!seen.contains(id)) {
+                result.add(id);
+            }
+        }
+        result.removeAll(receiver.present(result));
+        seen.addAll(result);
+        return result;
+    }
+
+    /** Class reporting the progress of a transfer on the standard
+     *  error, if transfer.progress is set. */
+    private static class Progress {
+
+        /** Progress of a transfer of TOTAL objects from the repository
+         *  with .gitlet directory REPODIR. */
+        Progress(String repoDir, int total) {
+            this.total = total;
+            enabled = total > 0
+                && Config.getBoolean(repoDir, "transfer.progress", false);
+        }
+
+        /** Records that one more object has been copied. */
+        synchronized void step() {
+            done += 1;
+            int percent = (int) (100L * done / total);
+            if (enabled && percent != shown) {
+                shown = percent;
+                System.err.printf("\rCopying objects: %3d%% (%d/%d)",
+                        percent, done, total);
+            }
+        }
+
+        /** Ends the report. */
+        synchronized void done() {
+            if (enabled) {
+                System.err.println(", done.");
+            }
+        }
+
+        /** Number of objects to copy. */
+        private final int total;
+        /** True if progress is reported. */
+        private final boolean enabled;
+        /** Number of objects copied. */
+        private int done;
+        /** Percentage last reported, or -1. */
+        private int shown = -1;
+    }
+
+    /** The .gitlet directory of the sending repository. */
+    private final String fromDir;
+    /** The receiving end. */
+    private final Receiver receiver;
+    /** Map pairing the IDs of the chunks sent or being sent with
+     *  their completion. */
+    private final ConcurrentHashMap<String, CompletableFuture<Void>>
+        sentChunks;
+    /** IDs of the commits to send, parents first. */
+    private final ArrayList<String> commits;
+    /** IDs of the trees to send, each after the trees within it. */
+    private final ArrayList<String> trees;
+    /** IDs of the blobs to send. */
+    private final ArrayList<String> blobs;
+    /** IDs of the objects found so far. */
+    private final HashSet<String> seen;
+}
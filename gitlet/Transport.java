@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+
+/** Interface of a connection to a remote repository, through which
+ *  push and fetch read its branches and exchange commits with it.
+ *  A remote is either a .gitlet directory, accessed directly, or a
+ *  location gitlet://HOST:PORT, served by gitlet serve.
+ *  @author Chris Sreesangkom
+ */
+interface Transport extends Closeable {
+
+    /** Prefix of the locations of served remotes. */
+    String SCHEME = "gitlet://";
+
+    /** Returns a connection from the repository with .gitlet
+     *  directory LOCALDIR to the remote at LOCATION. */
+    static Transport open(String localDir, String location) {
+        if (location.startsWith(SCHEME)) {
+            return new SocketTransport(localDir,
+                    location.substring(SCHEME.length()));
+        }
+        if (!new File(location).exists()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        return new DirectoryTransport(localDir, location);
+    }
+
+    /** Returns a map pairing the names of the branches of the remote
+     *  with their head commit IDs. */
+    Map<String, String> refs();
+
+    /** Sends commit ID, with the history the remote lacks, to the
+     *  remote. */
+    void send(String id);
+
+    /** Receives commit ID, with the history the local repository
+     *  lacks, from the remote. */
+    void receive(String id);
+
+    /** Sets branch BRANCH of the remote to commit NEWID, provided that
+     *  its head is still OLDID, or it does not exist if OLDID is
+     *  null. */
+    void updateRef(String branch, String oldID, String newID);
+
+    @Override
+    void close();
+
+    /** Class representing a remote that is a directory. */
+    class DirectoryTransport implements Transport {
+
+        /** A connection from LOCALDIR to the .gitlet directory
+         *  REMOTEDIR. */
+        DirectoryTransport(String localDir, String remoteDir) {
+            this.localDir = localDir;
+            this.remoteDir = remoteDir;
+        }
+
+        @Override
+        public Map<String, String> refs() {
+            return readRefs(remoteDir);
+        }
+
+        @Override
+        public void send(String id) {
+            new Transfer(localDir, new Transfer.DirectoryReceiver(remoteDir),
+                    id).run();
+        }
+
+        @Override
+        public void receive(String id) {
+            new Transfer(remoteDir, new Transfer.DirectoryReceiver(localDir),
+                    id).run();
+        }
+
+        @Override
+        public void updateRef(String branch, String oldID, String newID) {
+            writeRef(remoteDir, branch, oldID, newID);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** The .gitlet directory of the local repository. */
+        private final String localDir;
+        /** The .gitlet directory of the remote. */
+        private final String remoteDir;
+    }
+
+    /** Returns a map pairing the names of the branches of the
+     *  repository with .gitlet directory REPODIR with their heads. */
+    static Map<String, String> readRefs(String repoDir) {
+        return Refs.list(repoDir, "heads/");
+    }
+
+    /** Sets branch BRANCH of the repository with .gitlet directory
+     *  REPODIR to NEWID, provided that its head is still OLDID, or it
+     *  does not exist if OLDID is null. */
+    static void writeRef(String repoDir, String branch, String oldID,
+                         String newID) {
+        synchronized (Transport.class) {
+            if (!Refs.update(repoDir, "heads/" + branch, oldID, newID)) {
+                throw new GitletException.Conflict(
+                        "Please pull down remote changes before pushing.");
+            }
+        }
+    }
+}
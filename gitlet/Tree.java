@@ -0,0 +1,399 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** Class representing tree objects, which store the mapping of
+ *  file names to blob IDs of a commit.  A tree lists the entries of
+ *  one directory, sorted by name; subdirectories are trees of their
+ *  own.  A directory with more than FANOUT entries is split into
+ *  buckets by the hash of each name, so that changing one file
+ *  rewrites one bucket rather than the whole directory.  Trees are
+ *  content-addressed, so unchanged directories and buckets are
+ *  shared between commits and can be skipped by comparing IDs.
+ *
+ *  Each entry is encoded as its kind (BLOB, DIRECTORY or BUCKET),
+ *  its name in UTF-8, a zero byte and the raw 20-byte ID.
+ *  @author Chris Sreesangkom
+ */
+class Tree {
+
+    /** Kind of an entry naming a blob. */
+    private static final byte BLOB = 'b';
+    /** Kind of an entry naming a subdirectory. */
+    private static final byte DIRECTORY = 't';
+    /** Kind of an entry naming a bucket of the same directory. */
+    private static final byte BUCKET = 'f';
+    /** Directories with more entries than this are bucketed. */
+    private static final int FANOUT = 256;
+    /** Size of a raw object ID. */
+    private static final int ID_SIZE = 20;
+    /** Tree nodes decoded by readNode. */
+    private static final ObjectCache<TreeMap<String, Entry>> CACHE =
+        new ObjectCache<>();
+
+    /** Writes the trees for BLOBS, a mapping of file paths to blob
+     *  IDs, to the repository with .gitlet directory REPODIR.
+     *  Returns the ID of the root tree.  Throws a GitletException if
+     *  a path is both a file and the directory of another file. */
+    static String write(String repoDir, Map<String, String> blobs) {
+        TreeMap<String, Object> root = new TreeMap<>();
+        for (Map.Entry<String, String> file : blobs.entrySet()) {
+            TreeMap<String, Object> dir = root;
+            String[] parts = file.getKey().split("/");
+            for (int i = 0; i < parts.length - 1; i += 1) {
+                Object sub = dir.get(parts[i]);
+                if (sub == null) {
+                    sub = new TreeMap<String, Object>();
+                    dir.put(parts[i], sub);
+                } else if (!(sub instanceof TreeMap)) {
+                    throw pathConflict(file.getKey());
+                }
+                dir = castDir(sub);
+            }
+            if (dir.putIfAbsent(parts[parts.length - 1], file.getValue())
+                    != null) {
+                throw pathConflict(file.getKey());
+            }
+        }
+        return writeDir(repoDir, root);
+    }
+
+    /** Returns the error for file PATH, which is also a directory, or
+     *  lies under another file, in the files of a tree. */
+    private static GitletException pathConflict(String path) {
+        return Utils.error("File %s conflicts with a file or directory"
+                + " of the same name.", path);
+    }
+
+    /** Writes the tree for directory DIR, whose values are blob IDs
+     *  or nested directories, to REPODIR.  Returns its ID. */
+    private static String writeDir(String repoDir,
+                                   TreeMap<String, Object> dir) {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (Map.Entry<String, Object> item : dir.entrySet()) {
+            if (item.getValue() instanceof String) {
+                entries.put(item.getKey(),
+                        new Entry(BLOB, (String) item.getValue()));
+            } else {
+                entries.put(item.getKey(), new Entry(DIRECTORY,
+                        writeDir(repoDir, castDir(item.getValue()))));
+            }
+        }
+        if (entries.size() <= FANOUT) {
+            return writeNode(repoDir, entries);
+        }
+        TreeMap<String, TreeMap<String, Entry>> buckets = new TreeMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            buckets.computeIfAbsent(bucketOf(entry.getKey()),
+                k -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        TreeMap<String, Entry> index = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<String, Entry>> bucket
+                 : buckets.entrySet()) {
+            index.put(bucket.getKey(), new Entry(BUCKET,
+                    writeNode(repoDir, bucket.getValue())));
+        }
+        return writeNode(repoDir, index);
+    }
+
+    /** Writes the tree node with ENTRIES to REPODIR, unless it is
+     *  already there.  Returns its ID. */
+    private static String writeNode(String repoDir,
+                                    TreeMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            bytes.write(entry.getValue().kind);
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            bytes.write(name, 0, name.length);
+            bytes.write(0);
+            bytes.write(Utils.fromHex(entry.getValue().id), 0, ID_SIZE);
+        }
+        byte[] contents = bytes.toByteArray();
+        String id = Utils.sha1("tree", contents);
+        ObjectStore.write(repoDir, id, ObjectStore.TREE, contents);
+        return id;
+    }
+
+    /** Returns the mapping of file paths to blob IDs stored in the
+     *  tree with ID TREEID in REPODIR. */
+    static HashMap<String, String> read(String repoDir, String treeID) {
+        HashMap<String, String> result = new HashMap<>();
+        readInto(repoDir, treeID, "", result);
+        return result;
+    }
+
+    /** Adds the files of tree TREEID in REPODIR to RESULT, with
+     *  their paths prefixed by PREFIX. */
+    private static void readInto(String repoDir, String treeID,
+                                 String prefix,
+                                 HashMap<String, String> result) {
+        for (Map.Entry<String, Entry> entry
+                 : readNode(repoDir, treeID).entrySet()) {
+            Entry value = entry.getValue();
+            if (value.kind == BLOB) {
+                result.put(prefix + entry.getKey(), value.id);
+            } else if (value.kind == DIRECTORY) {
+                readInto(repoDir, value.id,
+                        prefix + entry.getKey() + "/", result);
+            } else {
+                readInto(repoDir, value.id, prefix, result);
+            }
+        }
+    }
+
+    /** Adds to TREES the IDs of the trees ROOTS of REPODIR and of
+     *  the trees they contain, each after the trees within it, and
+     *  adds their blobs to BLOBS.  The trees are read one level at a
+     *  time across all of ROOTS, and the entries of each level are
+     *  passed to SELECT in one batch; only those it returns are
+     *  added, along with the contents of the selected trees. */
+    static void collect(String repoDir, List<String> roots,
+                        Function<List<String>, Set<String>> select,
+                        List<String> trees, List<String> blobs) {
+        HashSet<String> found = new HashSet<>(roots);
+        List<String> level = roots;
+        while (!level.isEmpty()) {
+            ArrayList<String> ids = new ArrayList<>();
+            for (String id : level) {
+                for (Entry entry : readNode(repoDir, id).values()) {
+                    ids.add(entry.id);
+                }
+            }
+            Set<String> selected = new HashSet<>(select.apply(ids));
+            ArrayList<String> next = new ArrayList<>();
+            for (String id : level) {
+                for (Entry entry : readNode(repoDir, id).values()) {
+                    if (!selected.remove(entry.id)) {
+                        continue;
+                    } else if (entry.kind != BLOB) {
+                        found.add(entry.id);
+                        next.add(entry.id);
+                    } else {
+                        blobs.add(entry.id);
+                    }
+                }
+            }
+            level = next;
+        }
+        HashSet<String> added = new HashSet<>();
+        for (String root : roots) {
+            addInOrder(repoDir, root, found, added, trees);
+        }
+    }
+
+    /** Adds to TREES tree TREEID of REPODIR, if it is in FOUND and
+     *  not in ADDED, after those of the trees within it that are. */
+    private static void addInOrder(String repoDir, String treeID,
+                                   Set<String> found, Set<String> added,
+                                   List<String> trees) {
+        if (!found.contains(treeID) || !added.add(treeID)) {
+            return;
+        }
+        for (Entry entry : readNode(repoDir, treeID).values()) {
+            if (entry.kind != BLOB) {
+                addInOrder(repoDir, entry.id, found, added, trees);
+            }
+        }
+        trees.add(treeID);
+    }
+
+    /** Returns the files that differ between the trees FROM and TO
+     *  in REPODIR, mapped to a pair of their blob IDs in FROM and in
+     *  TO (null where the file is absent).  Subtrees with the same
+     *  ID on both sides are skipped without being read. */
+    static TreeMap<String, String[]> diff(String repoDir, String from,
+                                          String to) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        if (!from.equals(to)) {
+            diffNodes(repoDir, readNode(repoDir, from),
+                    readNode(repoDir, to), "", result);
+        }
+        return result;
+    }
+
+    /** Adds the differences between the tree nodes FROM and TO in
+     *  REPODIR, whose paths start with PREFIX, to RESULT. */
+    private static void diffNodes(String repoDir,
+                                  TreeMap<String, Entry> from,
+                                  TreeMap<String, Entry> to, String prefix,
+                                  TreeMap<String, String[]> result) {
+        if (isBucketed(from) != isBucketed(to)) {
+            from = unbucket(repoDir, from);
+            to = unbucket(repoDir, to);
+        }
+        TreeMap<String, Entry> all = new TreeMap<>(from);
+        all.putAll(to);
+        for (String name : all.keySet()) {
+            Entry a = from.get(name);
+            Entry b = to.get(name);
+            if (a != null && b != null && a.kind == b.kind
+                    && a.id.equals(b.id)) {
+                continue;
+            }
+            if (a != null && b != null && a.kind == BUCKET
+                    && b.kind == BUCKET) {
+                diffNodes(repoDir, readNode(repoDir, a.id),
+                        readNode(repoDir, b.id), prefix, result);
+            } else if (a != null && b != null && a.kind == DIRECTORY
+                       && b.kind == DIRECTORY) {
+                diffNodes(repoDir, readNode(repoDir, a.id),
+                        readNode(repoDir, b.id), prefix + name + "/",
+                        result);
+            } else {
+                HashMap<String, String> before = entryFiles(repoDir, a,
+                        prefix, name);
+                HashMap<String, String> after = entryFiles(repoDir, b,
+                        prefix, name);
+                for (String path : before.keySet()) {
+                    if (!before.get(path).equals(after.get(path))) {
+                        result.put(path, new String[] {before.get(path),
+                                                       after.get(path)});
+                    }
+                }
+                for (String path : after.keySet()) {
+                    if (!before.containsKey(path)) {
+                        result.put(path, new String[] {null,
+                                                       after.get(path)});
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the files named by ENTRY of REPODIR, which is called
+     *  NAME in the directory whose paths start with PREFIX; empty if
+     *  ENTRY is null.  A bucket is part of that directory, so its
+     *  files keep PREFIX rather than taking NAME. */
+    private static HashMap<String, String> entryFiles(String repoDir,
+                                                      Entry entry,
+                                                      String prefix,
+                                                      String name) {
+        HashMap<String, String> result = new HashMap<>();
+        if (entry == null) {
+            return result;
+        } else if (entry.kind == BLOB) {
+            result.put(prefix + name, entry.id);
+        } else if (entry.kind == BUCKET) {
+            readInto(repoDir, entry.id, prefix, result);
+        } else {
+            readInto(repoDir, entry.id, prefix + name + "/", result);
+        }
+        return result;
+    }
+
+    /** Returns true if NODE is split into buckets. */
+    private static boolean isBucketed(TreeMap<String, Entry> node) {
+        return !node.isEmpty()
+                && node.firstEntry().getValue().kind == BUCKET;
+    }
+
+    /** Returns the entries of NODE in REPODIR with its buckets, if
+     *  any, merged into one node. */
+    private static TreeMap<String, Entry> unbucket(
+            String repoDir, TreeMap<String, Entry> node) {
+        if (!isBucketed(node)) {
+            return node;
+        }
+        TreeMap<String, Entry> result = new TreeMap<>();
+        for (Entry bucket : node.values()) {
+            result.putAll(readNode(repoDir, bucket.id));
+        }
+        return result;
+    }
+
+    /** Returns the entries of the tree node with ID in REPODIR,
+     *  decoding them only on first use.  They are shared through
+     *  CACHE, so must not be modified. */
+    private static TreeMap<String, Entry> readNode(String repoDir,
+                                                   String id) {
+        TreeMap<String, Entry> result = CACHE.get(repoDir, id);
+        if (result != null) {
+            return result;
+        }
+        byte[] contents = ObjectStore.read(repoDir, id);
+        result = decode(contents);
+        CACHE.put(repoDir, id, result, contents.length);
+        return result;
+    }
+
+    /** Returns the entries of the tree node with CONTENTS.  Throws
+     *  IllegalArgumentException if they are not a tree node. */
+    private static TreeMap<String, Entry> decode(byte[] contents) {
+        ByteBuffer bytes = ByteBuffer.wrap(contents);
+        TreeMap<String, Entry> result = new TreeMap<>();
+        byte[] raw = new byte[ID_SIZE];
+        try {
+            while (bytes.hasRemaining()) {
+                byte kind = bytes.get();
+                int start = bytes.position();
+                while (bytes.get() != 0) {
+                    continue;
+                }
+                String name = new String(bytes.array(), start,
+                        bytes.position() - start - 1,
+                        StandardCharsets.UTF_8);
+                bytes.get(raw);
+                if (kind != BLOB && kind != DIRECTORY && kind != BUCKET) {
+                    throw new IllegalArgumentException("bad tree entry");
+                }
+                result.put(name, new Entry(kind, Utils.toHex(raw)));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated tree");
+        }
+        return result;
+    }
+
+    /** Returns the IDs of the objects named by the tree node with
+     *  CONTENTS.  Throws IllegalArgumentException if they are not a
+     *  tree node. */
+    static List<String> entryIDs(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        for (Entry entry : decode(contents).values()) {
+            result.add(entry.id);
+        }
+        return result;
+    }
+
+    /** Returns the cache of decoded tree nodes. */
+    static ObjectCache<?> cache() {
+        return CACHE;
+    }
+
+    /** Returns the bucket of a directory entry called NAME. */
+    private static String bucketOf(String name) {
+        return Utils.sha1(name).substring(0, 2);
+    }
+
+    /** Returns DIR as a directory map. */
+    @SuppressWarnings("unchecked")
+    private static TreeMap<String, Object> castDir(Object dir) {
+        return (TreeMap<String, Object>) dir;
+    }
+
+    /** Class representing one entry of a tree node. */
+    private static class Entry {
+
+        /** An entry of kind KIND naming object ID. */
+        Entry(byte kind, String id) {
+            this.kind = kind;
+            this.id = id;
+        }
+
+        /** Kind of the entry. */
+        private final byte kind;
+        /** ID of the object named by the entry. */
+        private final String id;
+    }
+}
@@ -3,8 +3,16 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.TreeMap;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Chris Sreesangkom
@@ -82,6 +90,1151 @@ public class UnitTest {
         delDir(gitlet);
     }
 
+    @Test
+    public void testBlobSha1IgnoresPath() throws java.io.IOException {
+        File first = File.createTempFile("blob", ".txt");
+        File second = File.createTempFile("other", ".dat");
+        Utils.writeContents(first, "same contents\n");
+        Utils.writeContents(second, "same contents\n");
+        assertEquals(Blob.getSha1(first), Blob.getSha1(second));
+        Utils.writeContents(second, "different contents\n");
+        assertNotEquals(Blob.getSha1(first), Blob.getSha1(second));
+        first.delete();
+        second.delete();
+    }
+
+    @Test
+    public void testGcPacksLooseObjects() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        byte[] contents = "packed contents\n".getBytes();
+        String id = Blob.getSha1(contents);
+        ObjectStore.write(".gitlet", id, ObjectStore.BLOB, contents);
+        Command.gc();
+        assertTrue(Utils.plainFilenamesIn(".gitlet//objects//"
+                + id.substring(0, 2)) == null);
+        assertArrayEquals(contents, ObjectStore.read(".gitlet", id));
+        assertEquals(id, ObjectStore.findByPrefix(".gitlet",
+                id.substring(0, 6)).get(0));
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testGcRepacksOnlyOnChange() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] first = text.toString().getBytes();
+        byte[] second = text.append("last\n").toString().getBytes();
+        byte[] other = "unrelated".getBytes();
+        String a = Blob.getSha1(first);
+        String b = Blob.getSha1(second);
+        String c = Blob.getSha1(other);
+        ObjectStore.write(".gitlet", a, ObjectStore.BLOB, first);
+        ObjectStore.write(".gitlet", b, ObjectStore.BLOB, second);
+        ObjectStore.write(".gitlet", c, ObjectStore.BLOB, other);
+        File packDir = new File(".gitlet//objects//pack");
+        ObjectStore.gc(".gitlet", java.util.Map.of());
+        List<String> whole = Utils.plainFilenamesIn(packDir);
+        assertEquals(2, whole.size());
+        ObjectStore.gc(".gitlet", java.util.Map.of(c, a));
+        assertEquals(whole, Utils.plainFilenamesIn(packDir));
+        ObjectStore.gc(".gitlet", java.util.Map.of(b, a));
+        List<String> delta = Utils.plainFilenamesIn(packDir);
+        assertEquals(2, delta.size());
+        assertNotEquals(whole, delta);
+        long modified = new File(packDir, delta.get(0)).lastModified();
+        ObjectStore.gc(".gitlet", java.util.Map.of(b, a));
+        assertEquals(delta, Utils.plainFilenamesIn(packDir));
+        assertEquals(modified, new File(packDir, delta.get(0))
+                .lastModified());
+        assertArrayEquals(second, ObjectStore.read(".gitlet", b));
+        assertArrayEquals(other, ObjectStore.read(".gitlet", c));
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testSeesPacksAndConfigOfOtherProcess() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        String other = "." + File.separator + ".gitlet";
+        byte[] contents = "packed elsewhere\n".getBytes();
+        String id = Blob.getSha1(contents);
+        ObjectStore.write(".gitlet", id, ObjectStore.BLOB, contents);
+        assertArrayEquals(contents, ObjectStore.read(other, id));
+        ObjectStore.gc(".gitlet", java.util.Map.of());
+        assertTrue(ObjectStore.contains(other, id));
+        assertArrayEquals(contents, ObjectStore.read(other, id));
+        assertEquals(List.of(id), ObjectStore.findByPrefix(other,
+                id.substring(0, 6)));
+        assertEquals(7, Config.getInt(other, "test.value", 7));
+        Utils.writeContents(new File(".gitlet//config"), "test.value=42\n");
+        assertEquals(42, Config.getInt(other, "test.value", 7));
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testLegacyRepositoryAsksForMigrate() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        String head = Refs.get(".gitlet", "heads/master");
+        Commit commit = Commit.getRemCommit(head, ".gitlet");
+        ObjectStore.replace(".gitlet", head, ObjectStore.COMMIT,
+                Utils.serialize(commit));
+        Commit.cache().clear();
+        try {
+            Repository.open(new File(".")).close();
+            fail("legacy repository opened");
+        } catch (GitletException e) {
+            assertTrue(e.getMessage().contains("gitlet migrate"));
+        }
+        assertFalse(Main.run("status"));
+        assertTrue(Main.run("migrate"));
+        assertTrue(Main.run("status"));
+        Repository.open(new File(".")).close();
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testFindByPrefixMatchesType() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        byte[] contents = "typed contents\n".getBytes();
+        String id = Blob.getSha1(contents);
+        ObjectStore.write(".gitlet", id, ObjectStore.BLOB, contents);
+        String prefix = id.substring(0, 6);
+        for (int round = 0; round < 2; round += 1) {
+            assertEquals(List.of(id), ObjectStore.findByPrefix(".gitlet",
+                    prefix, ObjectStore.BLOB));
+            assertTrue(ObjectStore.findByPrefix(".gitlet", prefix,
+                    ObjectStore.COMMIT).isEmpty());
+            Command.gc();
+        }
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testTreeRoundTripAndDiff() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 1000; i += 1) {
+            files.put("dir/file" + i, Utils.sha1("blob" + i));
+        }
+        files.put("top.txt", Utils.sha1("top"));
+        String before = Tree.write(".gitlet", files);
+        assertEquals(files, Tree.read(".gitlet", before));
+        files.put("dir/file500", Utils.sha1("changed"));
+        String after = Tree.write(".gitlet", files);
+        TreeMap<String, String[]> diff = Tree.diff(".gitlet", before, after);
+        assertEquals(1, diff.size());
+        assertEquals(Utils.sha1("changed"), diff.get("dir/file500")[1]);
+        assertTrue(Tree.diff(".gitlet", after, after).isEmpty());
+        for (List<String> paths : List.of(List.of("dir", "dir/file1"),
+                                          List.of("dir/file1", "dir"))) {
+            java.util.LinkedHashMap<String, String> clash =
+                new java.util.LinkedHashMap<>();
+            for (String path : paths) {
+                clash.put(path, Utils.sha1(path));
+            }
+            try {
+                Tree.write(".gitlet", clash);
+                fail("file and directory collapsed");
+            } catch (GitletException e) {
+                assertTrue(e.getMessage().contains("conflicts"));
+            }
+        }
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testTreeDiffChangesBuckets() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        HashMap<String, String> files = new HashMap<>();
+        HashMap<String, Integer> buckets = new HashMap<>();
+        for (int i = 0; i < 300; i += 1) {
+            files.put("dir/file" + i, Utils.sha1("blob" + i));
+            buckets.merge(Utils.sha1("file" + i).substring(0, 2), 1,
+                    Integer::sum);
+        }
+        String added = null;
+        for (int i = 0; added == null; i += 1) {
+            if (!buckets.containsKey(Utils.sha1("new" + i).substring(0, 2))) {
+                added = "new" + i;
+            }
+        }
+        String removed = null;
+        for (int i = 0; removed == null; i += 1) {
+            if (buckets.get(Utils.sha1("file" + i).substring(0, 2)) == 1) {
+                removed = "file" + i;
+            }
+        }
+        String before = Tree.write(".gitlet", files);
+        files.put("dir/" + added, Utils.sha1("added"));
+        files.remove("dir/" + removed);
+        String after = Tree.write(".gitlet", files);
+        assertEquals(files, Tree.read(".gitlet", after));
+        TreeMap<String, String[]> diff = Tree.diff(".gitlet", before, after);
+        assertEquals(2, diff.size());
+        assertNull(diff.get("dir/" + added)[0]);
+        assertEquals(Utils.sha1("added"), diff.get("dir/" + added)[1]);
+        assertNotNull(diff.get("dir/" + removed)[0]);
+        assertNull(diff.get("dir/" + removed)[1]);
+        TreeMap<String, String[]> back = Tree.diff(".gitlet", after, before);
+        assertEquals(diff.keySet(), back.keySet());
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testBinaryBlobStreamsUnchanged() throws java.io.IOException {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        byte[] contents = new byte[300000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31 + (i >> 7));
+        }
+        File file = File.createTempFile("binary", ".bin");
+        Utils.writeContents(file, contents);
+        String id = Blob.createBlobObj(".gitlet", file);
+        assertEquals(Blob.getSha1(contents), id);
+        assertEquals(id, Blob.getSha1(file));
+        assertArrayEquals(contents, ObjectStore.read(".gitlet", id));
+        file.delete();
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testChunkedBlobSharesChunks() throws java.io.IOException {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        System.setProperty("gitlet.core.chunking", "true");
+        System.setProperty("gitlet.core.chunkThreshold", "0");
+        try {
+            byte[] contents = new byte[2000000];
+            java.util.Random random = new java.util.Random(42);
+            random.nextBytes(contents);
+            File file = File.createTempFile("chunked", ".bin");
+            Utils.writeContents(file, contents);
+            String before = Blob.createBlobObj(".gitlet", file);
+            assertEquals(Blob.getSha1(contents), before);
+            int objects = countFiles(new File(".gitlet//objects"));
+            contents[1000000] += 1;
+            Utils.writeContents(file, contents);
+            String after = Blob.createBlobObj(".gitlet", file);
+            assertArrayEquals(contents, ObjectStore.read(".gitlet", after));
+            int added = countFiles(new File(".gitlet//objects")) - objects;
+            assertTrue(added >= 2 && added <= 4);
+            file.delete();
+        } finally {
+            System.clearProperty("gitlet.core.chunking");
+            System.clearProperty("gitlet.core.chunkThreshold");
+        }
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testDeltaRoundTrip() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes();
+        text.insert(20000, "inserted line\n").delete(100, 200);
+        byte[] target = text.toString().getBytes();
+        byte[] delta = Delta.compute(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 200);
+        assertArrayEquals(base, Delta.apply(target,
+                Delta.compute(target, base)));
+        assertArrayEquals(new byte[0], Delta.apply(base,
+                Delta.compute(base, new byte[0])));
+    }
+
+    @Test
+    public void testServeLoopback() {
+        File gitlet = new File(".gitlet");
+        File other = new File("other");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        delDir(other);
+        Command.init();
+        new File("other//.gitlet//objects").mkdirs();
+        new File("other//.gitlet//logs").mkdirs();
+        new File("other//.gitlet//refs//heads").mkdirs();
+        Server server = new Server(".gitlet", 0);
+        server.start();
+        try (Transport transport = Transport.open("other//.gitlet",
+                "gitlet://127.0.0.1:" + server.getPort())) {
+            String master = transport.refs().get("master");
+            assertNotNull(master);
+            transport.receive(master);
+            assertTrue(ObjectStore.contains("other//.gitlet", master));
+            assertEquals(master,
+                    CommitLogFile.ids("other//.gitlet").iterator().next());
+            transport.updateRef("copy", null, master);
+            assertEquals(master, transport.refs().get("copy"));
+            byte[] contents = "pushed".getBytes();
+            ObjectStore.write("other//.gitlet", Blob.getSha1(contents),
+                    ObjectStore.BLOB, contents);
+            HashMap<String, String> files = new HashMap<>();
+            files.put("dir/pushed.txt", Blob.getSha1(contents));
+            String pushed = Commit.createCommit("other//.gitlet", files,
+                    master, 1000L, "pushed");
+            transport.send(pushed);
+            transport.updateRef("copy", master, pushed);
+            assertEquals(pushed, transport.refs().get("copy"));
+            assertEquals(files, Commit.getRemCommit(pushed, ".gitlet")
+                    .getBlobs());
+        } finally {
+            server.close();
+        }
+        server = new Server(".gitlet", 0);
+        server.start();
+        try (Transport transport = Transport.open("other//.gitlet",
+                "gitlet://127.0.0.1:" + server.getPort())) {
+            transport.updateRef("copy", null,
+                    Refs.get(".gitlet", "heads/master"));
+            fail("stale update accepted");
+        } catch (GitletException e) {
+            assertEquals("Please pull down remote changes before pushing.",
+                    e.getMessage());
+        } finally {
+            server.close();
+        }
+        delDir(other);
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testTransferAsksInBatches() {
+        File gitlet = new File(".gitlet");
+        File other = new File("other");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        delDir(other);
+        Command.init();
+        new File("other//.gitlet//objects").mkdirs();
+        new File("other//.gitlet//logs").mkdirs();
+        String parent = Refs.get(".gitlet", "heads/master");
+        ArrayList<String> ids = new ArrayList<>();
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 300; i += 1) {
+            byte[] contents = ("version " + i).getBytes();
+            ObjectStore.write(".gitlet", Blob.getSha1(contents),
+                    ObjectStore.BLOB, contents);
+            files.put("dir/sub/file" + (i % 10), Blob.getSha1(contents));
+            parent = Commit.createCommit(".gitlet", files, parent, i,
+                    "commit " + i);
+            ids.add(parent);
+        }
+        int[] queries = new int[1];
+        new Transfer(".gitlet", countingReceiver("other//.gitlet", queries),
+                ids.get(99)).run();
+        assertTrue(queries[0] < 15);
+        queries[0] = 0;
+        Transfer transfer = new Transfer(".gitlet",
+                countingReceiver("other//.gitlet", queries), ids.get(299));
+        assertEquals(ids.subList(100, 300), transfer.getCommits());
+        assertTrue(queries[0] < 15);
+        transfer.run();
+        assertEquals(files, Commit.getRemCommit(ids.get(299),
+                "other//.gitlet").getBlobs());
+        delDir(other);
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testParallelTransfer() throws java.io.IOException {
+        File gitlet = new File(".gitlet");
+        File other = new File("other");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        delDir(other);
+        Command.init();
+        new File("other//.gitlet//objects").mkdirs();
+        new File("other//.gitlet//logs").mkdirs();
+        System.setProperty("gitlet.transfer.threads", "4");
+        System.setProperty("gitlet.core.chunking", "true");
+        System.setProperty("gitlet.core.chunkThreshold", "0");
+        try {
+            HashMap<String, String> files = new HashMap<>();
+            HashMap<String, byte[]> contents = new HashMap<>();
+            for (int i = 0; i < 50; i += 1) {
+                byte[] bytes = ("file " + i).getBytes();
+                String id = Blob.getSha1(bytes);
+                ObjectStore.write(".gitlet", id, ObjectStore.BLOB, bytes);
+                files.put("dir" + (i % 5) + "/file" + i, id);
+                contents.put(id, bytes);
+            }
+            byte[] large = new byte[500000];
+            new java.util.Random(7).nextBytes(large);
+            for (int i = 0; i < 2; i += 1) {
+                large[250000] = (byte) i;
+                File file = File.createTempFile("large", ".bin");
+                Utils.writeContents(file, large);
+                String id = Blob.createBlobObj(".gitlet", file);
+                file.delete();
+                files.put("large" + i, id);
+                contents.put(id, large.clone());
+            }
+            String commit = Commit.createCommit(".gitlet", files,
+                    Refs.get(".gitlet", "heads/master"), 1000L, "many");
+            HashMap<String, Integer> writes = new HashMap<>();
+            Transfer.Receiver receiver =
+                new Transfer.CheckingReceiver("other//.gitlet") {
+                    @Override
+                    public void write(String id, byte[] stored) {
+                        synchronized (writes) {
+                            writes.merge(id, 1, Integer::sum);
+                        }
+                        super.write(id, stored);
+                    }
+                };
+            new Transfer(".gitlet", receiver, commit).run();
+            for (int count : writes.values()) {
+                assertEquals(1, count);
+            }
+            for (String id : contents.keySet()) {
+                assertArrayEquals(contents.get(id),
+                        ObjectStore.read("other//.gitlet", id));
+            }
+            assertEquals(files, Commit.getRemCommit(commit,
+                    "other//.gitlet").getBlobs());
+        } finally {
+            System.clearProperty("gitlet.transfer.threads");
+            System.clearProperty("gitlet.core.chunking");
+            System.clearProperty("gitlet.core.chunkThreshold");
+        }
+        delDir(other);
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testServeRejectsBadObjects() throws java.io.IOException {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        byte[] contents = "served contents".getBytes();
+        String blob = Blob.getSha1(contents);
+        byte[] stored = ObjectStore.encode(ObjectStore.BLOB, contents);
+        Server server = new Server(".gitlet", 0);
+        server.start();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            java.io.DataOutputStream request =
+                new java.io.DataOutputStream(bytes);
+            request.writeUTF(Protocol.RECEIVE);
+            request.writeUTF(Protocol.OBJECT);
+            request.writeUTF(Utils.sha1("x"));
+            request.writeInt(stored.length);
+            request.write(stored);
+            request.writeUTF(Protocol.DONE);
+            assertTrue(talk(server, bytes).contains("does not match"));
+            assertFalse(ObjectStore.contains(".gitlet", Utils.sha1("x")));
+            bytes.reset();
+            request.writeUTF(Protocol.RECEIVE);
+            request.writeUTF(Protocol.OBJECT);
+            request.writeUTF(blob);
+            request.writeInt(-1);
+            assertEquals("Protocol error.", talk(server, bytes));
+            bytes.reset();
+            request.writeUTF(Protocol.RECEIVE);
+            request.writeUTF(Protocol.OBJECT);
+            request.writeUTF(blob);
+            request.writeInt(stored.length);
+            request.write(stored);
+            request.writeUTF(Protocol.COMMIT);
+            request.writeUTF(blob);
+            assertTrue(talk(server, bytes).contains("is not a commit"));
+            assertTrue(ObjectStore.contains(".gitlet", blob));
+            bytes.reset();
+            request.writeUTF(Protocol.UPDATE);
+            request.writeUTF("bad");
+            request.writeUTF("");
+            request.writeUTF(blob);
+            assertEquals("No commit with that id exists.",
+                    talk(server, bytes));
+            assertNull(Refs.get(".gitlet", "heads/bad"));
+            try (java.net.Socket socket = new java.net.Socket(
+                     java.net.InetAddress.getLoopbackAddress(),
+                     server.getPort())) {
+                java.io.DataOutputStream out = new java.io.DataOutputStream(
+                        socket.getOutputStream());
+                Protocol.Peer peer = new Protocol.Peer(
+                        new java.io.DataInputStream(socket.getInputStream()),
+                        out);
+                out.writeUTF(Protocol.RECEIVE);
+                peer.write(Utils.sha1("y"), stored);
+                peer.present(List.of(blob));
+                fail("error read as presence");
+            } catch (GitletException e) {
+                assertTrue(e.getMessage().contains("does not match"));
+            }
+        } finally {
+            server.close();
+        }
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testAlternatesAndLinks() {
+        File gitlet = new File(".gitlet");
+        File other = new File("other");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        delDir(other);
+        Command.init();
+        new File("other//.gitlet//objects").mkdirs();
+        byte[] contents = "shared contents".getBytes();
+        String id = Blob.getSha1(contents);
+        ObjectStore.write(".gitlet", id, ObjectStore.BLOB, contents);
+        assertTrue(ObjectStore.sameFileStore(".gitlet", "other//.gitlet"));
+        assertTrue(ObjectStore.link(".gitlet", "other//.gitlet", id));
+        assertArrayEquals(contents, ObjectStore.read("other//.gitlet", id));
+        delDir(other);
+        new File("other//.gitlet//objects").mkdirs();
+        ObjectStore.addAlternate("other//.gitlet", ".gitlet");
+        assertTrue(ObjectStore.contains("other//.gitlet", id));
+        assertArrayEquals(contents, ObjectStore.read("other//.gitlet", id));
+        assertEquals(1, countFiles(new File("other//.gitlet//objects")));
+        delDir(other);
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testMessageIndex() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<String> messages = new ArrayList<>();
+        String parent = "None";
+        for (int i = 0; i < 700; i += 1) {
+            String message = (i % 7 == 0 ? "fix bug " : "add feature ") + i;
+            parent = Commit.createCommit(".gitlet", new HashMap<>(), parent, i,
+                    message);
+            CommitLogFile.append(".gitlet", parent);
+            ids.add(parent);
+            messages.add(message);
+            if (i == 400) {
+                MessageIndex.update(".gitlet");
+                assertTrue(new File(".gitlet//logs//messages.idx").exists());
+            }
+        }
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += 1) {
+            if (messages.get(i).contains("bug 1")) {
+                expected.add(ids.get(i));
+            }
+        }
+        assertEquals(expected, MessageIndex.findContaining(".gitlet",
+                "bug 1"));
+        assertEquals(expected, MessageIndex.findMatching(".gitlet",
+                java.util.regex.Pattern.compile("^fix bug 1")));
+        assertEquals(List.of(ids.get(693)), MessageIndex.findExact(
+                ".gitlet", "fix bug 693"));
+        assertTrue(MessageIndex.findExact(".gitlet", "fix bug").isEmpty());
+        assertEquals(ids.size() + 1, MessageIndex.findMatching(".gitlet",
+                java.util.regex.Pattern.compile(".")).size());
+        assertEquals("fix bug ", MessageIndex.requiredLiteral(
+                "^fix bug \\d+"));
+        assertEquals("defg", MessageIndex.requiredLiteral("abc?defgx*[a-z]+"));
+        assertNull(MessageIndex.requiredLiteral("fix|bug"));
+        assertEquals("BCD", MessageIndex.requiredLiteral("\\x41BCD"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\u0066bug"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\0146bug"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\cIbug"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\p{Lu}bug"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\x{66}bug"));
+        assertEquals("bug", MessageIndex.requiredLiteral("\\N{SPACE}bug"));
+        assertNull(MessageIndex.requiredLiteral("\\yfix bug"));
+        assertEquals("abc", MessageIndex.requiredLiteral(
+                "abc\ud83d\ude00?"));
+        assertEquals("abc", MessageIndex.requiredLiteral(
+                "\ud83d\ude00*abc"));
+        assertEquals("a\ud83d\ude00bc", MessageIndex.requiredLiteral(
+                "a\\\ud83d\ude00bc"));
+        assertEquals(expected, MessageIndex.findMatching(".gitlet",
+                java.util.regex.Pattern.compile("^\\x66ix bug 1")));
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testPackedRefs() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        String master = Refs.get(".gitlet", "heads/master");
+        for (int i = 0; i < 100; i += 1) {
+            Refs.set(".gitlet", "heads/b" + i, Utils.sha1("b" + i));
+        }
+        Refs.set(".gitlet", "remotes/R1/master", master);
+        Refs.pack(".gitlet");
+        assertTrue(new File(".gitlet//packed-refs").isFile());
+        assertFalse(new File(".gitlet//refs//heads//b7").exists());
+        assertEquals(Utils.sha1("b7"), Refs.get(".gitlet", "heads/b7"));
+        assertEquals(master, Refs.get(".gitlet", "heads/master"));
+        assertNull(Refs.get(".gitlet", "heads/b"));
+        assertNull(Refs.get(".gitlet", "heads/b100"));
+        assertEquals(101, Refs.list(".gitlet", "heads/").size());
+        assertEquals(List.of("R1/master"), new ArrayList<>(
+                Refs.list(".gitlet", "remotes/").keySet()));
+
+        assertFalse(Refs.update(".gitlet", "heads/b7", master, master));
+        assertTrue(Refs.update(".gitlet", "heads/b7", Utils.sha1("b7"),
+                master));
+        assertEquals(master, Refs.get(".gitlet", "heads/b7"));
+        assertFalse(Refs.update(".gitlet", "heads/b8", null, master));
+        assertTrue(Refs.update(".gitlet", "heads/new", null, master));
+        Refs.delete(".gitlet", "heads/b9");
+        assertNull(Refs.get(".gitlet", "heads/b9"));
+        assertEquals(101, Refs.list(".gitlet", "heads/").size());
+
+        File packing = new File(".gitlet//packed-refs.lock");
+        Utils.writeContents(packing, "");
+        try {
+            Refs.delete(".gitlet", "heads/new");
+            fail("ref deleted while refs are being packed");
+        } catch (GitletException e) {
+            assertEquals(master, Refs.get(".gitlet", "heads/new"));
+        }
+        assertTrue(packing.delete());
+        Refs.delete(".gitlet", "heads/new");
+        Refs.pack(".gitlet");
+        assertNull(Refs.get(".gitlet", "heads/new"));
+        assertFalse(packing.exists());
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testBatch() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        assertEquals(List.of("commit", "two words", "a\"b", ""),
+                Batch.split("commit \"two words\"  \"a\\\"b\" \"\""));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Batch.run(new BufferedReader(new StringReader(
+                "init\nbranch dev\n\nbranch dev\nfrobnicate\nflush\n")),
+                new PrintStream(out, true, StandardCharsets.UTF_8));
+        assertEquals("ok 0\nok 0\n"
+                + "error 40\nA branch with that name already exists.\n"
+                + "error 34\nNo command with that name exists.\n"
+                + "ok 0\n", out.toString(StandardCharsets.UTF_8));
+        assertTrue(new File(".gitlet//stage").isFile());
+        assertNotNull(Refs.get(".gitlet", "heads/dev"));
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testRepositoryReportsOutcomes() {
+        File dir = new File("repoApi");
+        delDir(dir);
+        dir.mkdir();
+        try (Repository repo = new Repository(dir)) {
+            repo.init();
+            try {
+                repo.init();
+                fail("init over an existing repository");
+            } catch (GitletException.Conflict e) {
+                assertNotNull(e.getMessage());
+            }
+            try {
+                repo.commit("nothing");
+                fail("commit with nothing staged");
+            } catch (GitletException e) {
+                assertEquals("No changes added to the commit.",
+                        e.getMessage());
+            }
+            assertTrue(repo.find("nothing").isEmpty());
+            assertEquals(1, repo.find("initial commit").size());
+            repo.branch("dev");
+            Utils.writeContents(new File(dir, "f"), "f");
+            repo.add("f");
+            repo.commit("on master");
+            assertEquals(Repository.MergeResult.ANCESTOR,
+                    repo.merge("dev"));
+            repo.checkoutBranch("dev");
+            assertEquals(Repository.MergeResult.FAST_FORWARD,
+                    repo.merge("master"));
+        }
+        delDir(dir);
+    }
+
+    @Test
+    public void testRacyEditBetweenCommands() {
+        File dir = new File("repoRacy");
+        delDir(dir);
+        dir.mkdir();
+        try (Repository repo = new Repository(dir)) {
+            repo.init();
+            File file = new File(dir, "f");
+            Utils.writeContents(file, "one");
+            long modified = file.lastModified();
+            repo.add("f");
+            repo.commit("first");
+            repo.endCommand();
+            Utils.writeContents(file, "two");
+            file.setLastModified(modified);
+            repo.add("f");
+            repo.commit("second");
+            String head = Refs.get("repoRacy//.gitlet", "heads/master");
+            assertEquals(Blob.getSha1("two".getBytes()),
+                    Commit.getRemCommit(head, "repoRacy//.gitlet")
+                    .getBlobs().get("f"));
+        }
+        delDir(dir);
+    }
+
+    @Test
+    public void testParallelHashing() {
+        File dir = new File("repoHash");
+        delDir(dir);
+        dir.mkdir();
+        System.setProperty("gitlet.core.parallelism", "4");
+        PrintStream stdout = System.out;
+        try (Repository repo = new Repository(dir)) {
+            repo.init();
+            String[] names = new String[200];
+            HashMap<String, String> expected = new HashMap<>();
+            for (int i = 0; i < names.length; i += 1) {
+                names[i] = "file" + i;
+                Utils.writeContents(new File(dir, names[i]), "v" + i);
+                expected.put(names[i], Blob.getSha1(("v" + i).getBytes()));
+            }
+            repo.add(names);
+            repo.commit("many files");
+            String head = Refs.get("repoHash//.gitlet", "heads/master");
+            assertEquals(expected, Commit.getRemCommit(head,
+                    "repoHash//.gitlet").getBlobs());
+            for (String id : expected.values()) {
+                assertTrue(ObjectStore.contains("repoHash//.gitlet", id));
+            }
+            for (int i = 0; i < 20; i += 1) {
+                Utils.writeContents(new File(dir, names[i]), "changed " + i);
+            }
+            new File(dir, names[20]).delete();
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(parallel, true,
+                    StandardCharsets.UTF_8));
+            repo.status();
+            System.setProperty("gitlet.core.parallelism", "1");
+            ByteArrayOutputStream serial = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(serial, true,
+                    StandardCharsets.UTF_8));
+            repo.status();
+            String status = parallel.toString(StandardCharsets.UTF_8);
+            assertEquals(serial.toString(StandardCharsets.UTF_8), status);
+            assertTrue(status.contains("file0 (modified)\n"));
+            assertTrue(status.contains("file19 (modified)\n"));
+            assertFalse(status.contains("file21 (modified)"));
+            assertTrue(status.contains("file20 (deleted)\n"));
+        } finally {
+            System.setOut(stdout);
+            System.clearProperty("gitlet.core.parallelism");
+        }
+        delDir(dir);
+    }
+
+    @Test
+    public void testRepositoryAtPath() {
+        File dirA = new File("repoA");
+        File dirB = new File("repoB");
+        delDir(dirA);
+        delDir(dirB);
+        dirA.mkdir();
+        dirB.mkdir();
+        try (Repository a = new Repository(dirA)) {
+            a.init();
+            Utils.writeContents(new File(dirA, "f.txt"), "one");
+            a.add("f.txt");
+            a.commit("first");
+            try {
+                a.branch("master");
+                fail("existing branch created");
+            } catch (GitletException.Conflict e) {
+                assertEquals("A branch with that name already exists.",
+                        e.getMessage());
+            }
+        }
+        assertTrue(new File("repoA//.gitlet//stage").isFile());
+        String head = Refs.get("repoA//.gitlet", "heads/master");
+        try (Repository b = new Repository(dirB)) {
+            b.init();
+            b.addRemote("A", "../repoA/.gitlet");
+            b.fetch("A", "master");
+            assertEquals(head, Refs.get("repoB//.gitlet", "remotes/A/master"));
+            b.checkoutBranch("A/master");
+            assertEquals("one", Utils.readContentsAsString(
+                    new File(dirB, "f.txt")));
+            try {
+                b.checkoutBranch("nope");
+                fail("missing branch checked out");
+            } catch (GitletException.NotFound e) {
+                assertEquals("No such branch exists.", e.getMessage());
+            }
+        }
+        try {
+            Repository.open(new File("repoC"));
+            fail("missing repository opened");
+        } catch (GitletException.NotFound e) {
+            assertEquals("Not in an initialized Gitlet directory.",
+                    e.getMessage());
+        }
+        delDir(dirA);
+        delDir(dirB);
+    }
+
+    @Test
+    public void testCommitGraphAppendedByOtherProcess()
+        throws java.io.IOException, InterruptedException {
+        File dir = new File("repoGraph");
+        delDir(dir);
+        dir.mkdir();
+        try (Repository repo = new Repository(dir)) {
+            repo.init();
+        }
+        String repoDir = "repoGraph//.gitlet";
+        String init = Refs.get(repoDir, "heads/master");
+        HashMap<String, String> files = new HashMap<>();
+        String one = Commit.createCommit(repoDir, files, init, 1000L, "one");
+        Utils.writeContents(new File(dir, "g.txt"), "g");
+        runMain(dir, "add", "g.txt");
+        runMain(dir, "commit", "two");
+        String two = Refs.get(repoDir, "heads/master");
+        String three = Commit.createCommit(repoDir, files, one, 3000L,
+                "three");
+        String four = Commit.createCommit(repoDir, files, three, 4000L,
+                "four");
+        CommitGraph graph = CommitGraph.get(repoDir);
+        assertTrue(graph.isAncestor(two, two));
+        assertFalse(graph.isAncestor(two, four));
+        assertTrue(graph.isAncestor(one, four));
+        byte[] bytes = Utils.readContents(
+                new File(repoDir + "//objects//info//commit-graph"));
+        java.nio.ByteBuffer records = java.nio.ByteBuffer.wrap(bytes);
+        records.position(8);
+        ArrayList<String> ids = new ArrayList<>();
+        byte[] raw = new byte[20];
+        while (records.hasRemaining()) {
+            records.get(raw);
+            String id = Utils.toHex(raw);
+            int parent = records.getInt();
+            records.position(records.position() + 16);
+            String expected = Commit.getRemCommit(id, repoDir).getParentID();
+            assertEquals(expected,
+                    parent == CommitGraph.NONE ? "None" : ids.get(parent));
+            ids.add(id);
+        }
+        assertEquals(5, ids.size());
+        delDir(dir);
+    }
+
+    @Test
+    public void testCheckoutResetBucketedTree() {
+        File dir = new File("repoBuckets");
+        delDir(dir);
+        dir.mkdir();
+        try (Repository repo = new Repository(dir)) {
+            repo.init();
+            String[] names = new String[300];
+            HashMap<String, Integer> buckets = new HashMap<>();
+            for (int i = 0; i < names.length; i += 1) {
+                names[i] = "file" + i;
+                Utils.writeContents(new File(dir, names[i]), "v" + i);
+                buckets.merge(Utils.sha1(names[i]).substring(0, 2), 1,
+                        Integer::sum);
+            }
+            repo.add(names);
+            repo.commit("many files");
+            String base = Refs.get("repoBuckets//.gitlet", "heads/master");
+            repo.branch("other");
+            String added = null;
+            for (int i = 0; added == null; i += 1) {
+                String bucket = Utils.sha1("new" + i).substring(0, 2);
+                if (!buckets.containsKey(bucket)) {
+                    added = "new" + i;
+                }
+            }
+            String removed = null;
+            for (int i = 0; removed == null; i += 1) {
+                if (buckets.get(Utils.sha1(names[i]).substring(0, 2)) == 1) {
+                    removed = names[i];
+                }
+            }
+            Utils.writeContents(new File(dir, added), "added");
+            repo.add(added);
+            repo.remove(removed);
+            repo.commit("change buckets");
+            String changed = Refs.get("repoBuckets//.gitlet", "heads/master");
+            repo.checkoutBranch("other");
+            assertFalse(new File(dir, added).exists());
+            assertTrue(new File(dir, removed).isFile());
+            repo.checkoutBranch("master");
+            assertEquals("added", Utils.readContentsAsString(
+                    new File(dir, added)));
+            assertFalse(new File(dir, removed).exists());
+            repo.reset(base);
+            assertFalse(new File(dir, added).exists());
+            assertTrue(new File(dir, removed).isFile());
+            repo.reset(changed);
+            assertTrue(new File(dir, added).isFile());
+            assertFalse(new File(dir, removed).exists());
+        }
+        delDir(dir);
+    }
+
+    @Test
+    public void testPushFetchSlashedBranch() {
+        File dirA = new File("repoA");
+        File dirB = new File("repoB");
+        delDir(dirA);
+        delDir(dirB);
+        dirA.mkdir();
+        dirB.mkdir();
+        try (Repository a = new Repository(dirA)) {
+            a.init();
+        }
+        try (Repository b = new Repository(dirB)) {
+            b.init();
+            Utils.writeContents(new File(dirB, "f.txt"), "one");
+            b.add("f.txt");
+            b.commit("first");
+            try {
+                b.push("A", "master");
+                fail("pushed to missing remote");
+            } catch (GitletException.NotFound e) {
+                assertEquals("A remote with that name does not exist.",
+                        e.getMessage());
+            }
+            b.addRemote("A", "../repoA/.gitlet");
+            b.push("A", "feature/one");
+            String head = Refs.get("repoB//.gitlet", "heads/master");
+            assertEquals(head,
+                    Refs.get("repoA//.gitlet", "heads/feature/one"));
+            assertNull(Refs.get("repoA//.gitlet", "heads/feature_one"));
+            b.fetch("A", "feature/one");
+            assertEquals(head,
+                    Refs.get("repoB//.gitlet", "remotes/A/feature/one"));
+        }
+        delDir(dirA);
+        delDir(dirB);
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a.txt", Utils.sha1("a"));
+        files.put("dir/b.txt", Utils.sha1("b"));
+        String first = Commit.createCommit(".gitlet", files, "None",
+                1000L, "first");
+        String merge = Commit.createCommit(".gitlet", files, first,
+                2000L, "merge \u00fc", first);
+        assertEquals("None",
+                Commit.getRemCommit(first, ".gitlet").getParentID());
+        Commit commit = Commit.getRemCommit(merge, ".gitlet");
+        byte[] encoded = commit.encode();
+        assertTrue(encoded.length < Utils.serialize(commit).length / 2);
+        Commit legacy = Commit.decode(".gitlet", Utils.serialize(commit));
+        assertFalse(commit.isLegacy());
+        assertTrue(legacy.isLegacy());
+        for (Commit c : List.of(commit, legacy,
+                                Commit.decode(".gitlet", encoded))) {
+            assertEquals(merge, c.getID());
+            assertEquals(first, c.getParentID());
+            assertEquals(first, c.getSecondParentID());
+            assertEquals(2000L, c.getTimestamp());
+            assertEquals("merge \u00fc", c.getMessage());
+            assertEquals(files, c.getBlobs());
+        }
+        try {
+            Commit.decode(".gitlet", new byte[3]);
+            fail("truncated commit decoded");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+
+        Stage stage = new Stage(commit);
+        stage.add("c.txt", Utils.sha1("c"));
+        stage.add("a.txt", Utils.sha1("a2"));
+        stage.remove("dir/b.txt");
+        RemoteStorer remotes = new RemoteStorer();
+        remotes.add("origin", "../origin/.gitlet");
+        for (boolean current : new boolean[] {true, false}) {
+            Stage copy = Stage.decode(".gitlet", current ? stage.encode()
+                    : Utils.serialize(stage));
+            assertEquals(stage.getStagedMap(), copy.getStagedMap());
+            assertEquals(stage.getRemoved(), copy.getRemoved());
+            assertEquals(files, copy.getTrackedMap());
+            RemoteStorer remotesCopy = RemoteStorer.decode(current
+                    ? remotes.encode() : Utils.serialize(remotes));
+            assertTrue(remotesCopy.contains("origin"));
+            assertEquals("../origin/.gitlet",
+                    remotesCopy.getRemote("origin").getDirectory());
+        }
+        delDir(gitlet);
+    }
+
+    @Test
+    public void testObjectCache() {
+        File gitlet = new File(".gitlet");
+        if (gitlet.exists()) {
+            delDir(gitlet);
+        }
+        Command.init();
+        HashMap<String, String> files = new HashMap<>();
+        String head = "None";
+        for (int i = 0; i < 50; i += 1) {
+            files.put("file" + i, Utils.sha1("blob" + i));
+            head = Commit.createCommit(".gitlet", files, head, i, "c" + i);
+        }
+        ObjectCache.release(".gitlet");
+        ObjectCache<?> commits = Commit.cache();
+        ObjectCache<?> trees = Tree.cache();
+        long misses = commits.getMisses();
+        long hits = commits.getHits();
+        for (int walk = 0; walk < 2; walk += 1) {
+            for (String id = head; !id.equals("None");) {
+                Commit commit = Commit.getRemCommit(id, ".gitlet");
+                commit.getBlobs().clear();
+                id = commit.getParentID();
+            }
+        }
+        assertEquals(50, commits.getMisses() - misses);
+        assertEquals(50, commits.getHits() - hits);
+        assertEquals(50, Commit.getRemCommit(head, ".gitlet")
+                .getBlobs().size());
+        assertTrue(trees.getHits() > 0);
+
+        ObjectCache.release(".gitlet");
+        assertEquals(0, commits.size());
+        System.setProperty("gitlet.core.objectCacheSize", "400");
+        try {
+            for (String id = head; !id.equals("None");) {
+                id = Commit.getRemCommit(id, ".gitlet").getParentID();
+            }
+            assertTrue(commits.size() > 0 && commits.size() < 50);
+            System.setProperty("gitlet.core.keepCacheWarm", "true");
+            ObjectCache.release(".gitlet");
+            assertTrue(commits.size() > 0);
+        } finally {
+            System.clearProperty("gitlet.core.objectCacheSize");
+            System.clearProperty("gitlet.core.keepCacheWarm");
+            ObjectCache.release(".gitlet");
+        }
+        delDir(gitlet);
+    }
+
+    /** Returns a receiver storing objects in the repository with
+     *  .gitlet directory REPODIR, counting its queries in QUERIES. */
+    private static Transfer.Receiver countingReceiver(String repoDir,
+                                                      int[] queries) {
+        return new Transfer.DirectoryReceiver(repoDir) {
+            @Override
+            public synchronized java.util.Set<String> present(
+                    java.util.Collection<String> ids) {
+                queries[0] += 1;
+                return super.present(ids);
+            }
+        };
+    }
+
+    /** Sends the requests in BYTES to SERVER on a new connection and
+     *  returns its first answer, or the message of the error it
+     *  reports. */
+    private static String talk(Server server, ByteArrayOutputStream bytes)
+        throws java.io.IOException {
+        try (java.net.Socket socket = new java.net.Socket(
+                 java.net.InetAddress.getLoopbackAddress(),
+                 server.getPort())) {
+            socket.getOutputStream().write(bytes.toByteArray());
+            java.io.DataInputStream in =
+                new java.io.DataInputStream(socket.getInputStream());
+            String answer = in.readUTF();
+            return answer.equals(Protocol.ERROR) ? in.readUTF() : answer;
+        }
+    }
+
+    /** Runs gitlet.Main with ARGS in a separate process whose
+     *  working directory is DIR. */
+    private static void runMain(File dir, String... args)
+        throws java.io.IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java")
+                .getPath());
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            classPath.append(new File(entry).getAbsolutePath())
+                .append(File.pathSeparator);
+        }
+        command.add("-cp");
+        command.add(classPath.toString());
+        command.add("gitlet.Main");
+        command.addAll(java.util.Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(dir)
+            .inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+
+    private static int countFiles(File dir) {
+        int count = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                count += file.isDirectory() ? countFiles(file) : 1;
+            }
+        }
+        return count;
+    }
+
     private static boolean delDir(File dir) {
         if (dir.isDirectory()) {
             File[] filesInside = dir.listFiles();
@@ -1,7 +1,9 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -9,14 +11,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /** Assorted utilities.
@@ -32,6 +36,13 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        return toHex(sha1Digest(vals).digest());
+    }
+
+    /** Returns a SHA-1 digest that has been fed the concatenation of
+     *  VALS, any mixture of byte arrays and Strings, so that further
+     *  contents can be streamed into it. */
+    static MessageDigest sha1Digest(Object... vals) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
@@ -43,11 +54,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return md;
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -59,6 +66,30 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX,
+     *  which must have an even number of digits. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -148,6 +179,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -216,6 +264,70 @@ class Utils {
         }
     }
 
+    /** Returns true if BYTES start with the header of Java
+     *  serialization, as the files and commits written by earlier
+     *  versions of gitlet do. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == (byte) 0xac
+            && bytes[1] == (byte) 0xed;
+    }
+
+    /* BINARY ENCODING */
+
+    /** Writes the SHA-1 UID ID to OUT as its raw bytes. */
+    static void writeID(DataOutputStream out, String id)
+        throws IOException {
+        if (id.length() != UID_LENGTH) {
+            throw error("Malformed object ID %s.", id);
+        }
+        out.write(fromHex(id));
+    }
+
+    /** Returns the SHA-1 UID read from IN, as written by writeID. */
+    static String readID(ByteBuffer in) {
+        byte[] raw = new byte[UID_LENGTH / 2];
+        in.get(raw);
+        return toHex(raw);
+    }
+
+    /** Writes STR to OUT as the length of its UTF-8 encoding followed
+     *  by the encoding. */
+    static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns the string read from IN, as written by writeString. */
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes MAP, pairing file names with SHA-1 UIDs, to OUT as its
+     *  size followed by each name and raw UID in turn. */
+    static void writeIDMap(DataOutputStream out, Map<String, String> map)
+        throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeID(out, entry.getValue());
+        }
+    }
+
+    /** Returns the map read from IN, as written by writeIDMap. */
+    static HashMap<String, String> readIDMap(ByteBuffer in) {
+        int size = in.getInt();
+        HashMap<String, String> result = new HashMap<>(2 * size);
+        for (int i = 0; i < size; i += 1) {
+            String name = readString(in);
+            result.put(name, readID(in));
+        }
+        return result;
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */